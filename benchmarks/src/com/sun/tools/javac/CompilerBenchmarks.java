@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.sun.tools.javac.code.ScopeBenchmarks;
+import com.sun.tools.javac.code.TypesBenchmarks;
+import com.sun.tools.javac.comp.AnalysisBenchmarks;
+import com.sun.tools.javac.file.ZipFileIndexReadBenchmark;
+import com.sun.tools.javac.jvm.ClassReaderBenchmark;
+import com.sun.tools.javac.jvm.GenBenchmarks;
+import com.sun.tools.javac.main.PhaseBenchmark;
+import com.sun.tools.javac.parser.ParserBenchmarks;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.NameTableBenchmarks;
+
+/**
+ * Runs the benchmarks of the compiler's hot paths on a generated corpus
+ * (see BenchmarkCorpus): scanning, parsing, the name table, scope lookup,
+ * subtyping, method resolution, flow analysis, code generation, writing
+ * and reading class files and complete compilations by phase, followed
+ * by ZipFileIndexReadBenchmark, which has its own output.
+ *
+ * <pre>
+ *   java -Xbootclasspath/p:&lt;javac classes&gt;:&lt;benchmark classes&gt; \
+ *       com.sun.tools.javac.CompilerBenchmarks [pattern] [seconds] [classes] [blocks]
+ * </pre>
+ * Only the benchmarks whose names contain a match of the pattern are run,
+ * for example "types" or "scanner|parser".  The benchmarks must be loaded
+ * by the same class loader as the compiler, as several of them use
+ * package private parts of it.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class CompilerBenchmarks {
+    public static void main(String... args) throws Exception {
+        Pattern pattern = Pattern.compile(args.length > 0 ? args[0] : "");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int classes = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int blocks = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        BenchmarkCorpus corpus = BenchmarkCorpus.create(classes, blocks);
+        System.out.println("corpus: " + corpus.dir);
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.addAll(ParserBenchmarks.benchmarks(corpus));
+        benchmarks.addAll(NameTableBenchmarks.benchmarks(corpus));
+        benchmarks.addAll(ScopeBenchmarks.benchmarks(corpus, blocks));
+        benchmarks.addAll(TypesBenchmarks.benchmarks(corpus));
+        benchmarks.addAll(AnalysisBenchmarks.benchmarks(corpus));
+        benchmarks.addAll(GenBenchmarks.benchmarks(corpus));
+        benchmarks.add(new ClassReaderBenchmark(corpus));
+        benchmarks.add(new PhaseBenchmark(corpus));
+        Benchmark.run(benchmarks, pattern, seconds, System.out);
+
+        if (pattern.matcher("zip").find())
+            ZipFileIndexReadBenchmark.main(corpus.jar.getPath(), "1", String.valueOf(seconds));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.code;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Filter;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+
+import static com.sun.tools.javac.code.Kinds.*;
+
+/**
+ * Scope.lookup and CompactScope.lookup on the members of the attributed
+ * benchmark corpus.
+ *
+ * <p>scope.lookup enters the members of all corpus classes into one
+ * scope, and looks up every member name, and as many names that are not
+ * there, with a filter for variables as Resolve.findField uses.
+ *
+ * <p>scope.nested follows Attr through the long method of each class: a
+ * method scope is nested in a scope with the members of the class, which
+ * is made once, and every block enters a local, opens a nested scope for
+ * its own local, looks up locals and fields, and leaves it again.
+ *
+ * <p>scope.lookup.compact and scope.nested.compact do the same with
+ * CompactScope, which Lower uses for its free variable proxies.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ScopeBenchmarks {
+    public static List<Benchmark> benchmarks(BenchmarkCorpus corpus, final int blocks) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new Base("scope.lookup", corpus, blocks) {
+            Scope scope;
+            @Override
+            public void setUp() throws Exception {
+                super.setUp();
+                scope = new Scope(syms.noSymbol);
+                for (List<Symbol> l : members)
+                    for (Symbol sym : l)
+                        scope.enter(sym);
+            }
+            public long op() {
+                long found = 0;
+                for (Name name : lookups) {
+                    if (scope.lookup(name, isVar).scope != null)
+                        found++;
+                }
+                return found;
+            }
+        });
+        list.add(new Base("scope.nested", corpus, blocks) {
+            final List<Scope> classScopes = new ArrayList<Scope>();
+            @Override
+            public void setUp() throws Exception {
+                super.setUp();
+                for (int c = 0; c < classes.size(); c++) {
+                    Scope classScope = new Scope(classes.get(c));
+                    for (Symbol sym : members.get(c))
+                        classScope.enter(sym);
+                    classScopes.add(classScope);
+                }
+            }
+            public long op() {
+                long found = 0;
+                for (Scope classScope : classScopes) {
+                    Scope methodScope = classScope.dup(method);
+                    methodScope.enter(total);
+                    for (int j = 0; j < locals.length; j++) {
+                        methodScope.enter(locals[j]);
+                        Scope blockScope = methodScope.dup();
+                        blockScope.enter(index);
+                        for (Name name : blockLookups[j]) {
+                            if (blockScope.lookup(name).scope != null)
+                                found++;
+                        }
+                        blockScope.leave();
+                    }
+                    methodScope.leave();
+                }
+                return found;
+            }
+        });
+        list.add(new Base("scope.lookup.compact", corpus, blocks) {
+            CompactScope scope;
+            @Override
+            public void setUp() throws Exception {
+                super.setUp();
+                scope = new CompactScope(syms.noSymbol);
+                for (List<Symbol> l : members)
+                    for (Symbol sym : l)
+                        scope.enter(sym);
+            }
+            public long op() {
+                long found = 0;
+                for (Name name : lookups) {
+                    if (scope.lookup(name, isVar) != null)
+                        found++;
+                }
+                return found;
+            }
+        });
+        list.add(new Base("scope.nested.compact", corpus, blocks) {
+            final List<CompactScope> classScopes = new ArrayList<CompactScope>();
+            @Override
+            public void setUp() throws Exception {
+                super.setUp();
+                for (int c = 0; c < classes.size(); c++) {
+                    CompactScope classScope = new CompactScope(classes.get(c));
+                    for (Symbol sym : members.get(c))
+                        classScope.enter(sym);
+                    classScopes.add(classScope);
+                }
+            }
+            public long op() {
+                long found = 0;
+                for (CompactScope classScope : classScopes) {
+                    CompactScope methodScope = classScope.dup(method);
+                    methodScope.enter(total);
+                    for (int j = 0; j < locals.length; j++) {
+                        methodScope.enter(locals[j]);
+                        CompactScope blockScope = methodScope.dup();
+                        blockScope.enter(index);
+                        for (Name name : blockLookups[j]) {
+                            if (blockScope.lookup(name) != null)
+                                found++;
+                        }
+                        blockScope.leave();
+                    }
+                    methodScope.leave();
+                }
+                return found;
+            }
+        });
+        return list;
+    }
+
+    static abstract class Base extends Benchmark {
+        final BenchmarkCorpus corpus;
+        final int blocks;
+        final List<ClassSymbol> classes = new ArrayList<ClassSymbol>();
+        final List<List<Symbol>> members = new ArrayList<List<Symbol>>();
+        final List<Name> lookups = new ArrayList<Name>();
+        Symtab syms;
+        MethodSymbol method;
+        VarSymbol total, index;
+        VarSymbol[] locals;
+        Name[][] blockLookups;
+
+        final Filter<Symbol> isVar = new Filter<Symbol>() {
+            public boolean accepts(Symbol s) {
+                return s.kind == VAR;
+            }
+        };
+
+        Base(String name, BenchmarkCorpus corpus, int blocks) {
+            super(name);
+            this.corpus = corpus;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            JavacTaskImpl task = corpus.task();
+            Iterable<? extends Element> elems = task.analyze();
+            syms = Symtab.instance(task.getContext());
+            Names names = Names.instance(task.getContext());
+            for (Element e : elems) {
+                ClassSymbol c = (ClassSymbol) e;
+                List<Symbol> l = new ArrayList<Symbol>();
+                for (Symbol sym : c.members().getElements())
+                    l.add(sym);
+                classes.add(c);
+                members.add(l);
+                for (Symbol sym : l) {
+                    lookups.add(sym.name);
+                    lookups.add(names.fromString(sym.name + "$absent"));
+                }
+            }
+            method = new MethodSymbol(0, names.fromString("big"), syms.unknownType, syms.noSymbol);
+            total = new VarSymbol(0, names.fromString("total"), syms.intType, method);
+            index = new VarSymbol(0, names.fromString("i"), syms.intType, method);
+            locals = new VarSymbol[blocks];
+            blockLookups = new Name[blocks][];
+            for (int j = 0; j < blocks; j++) {
+                locals[j] = new VarSymbol(0, names.fromString("a" + j), syms.intType, method);
+                blockLookups[j] = new Name[] {
+                    locals[j].name, index.name, total.name,
+                    names.fromString("f0"), names.fromString("MASK"), names.fromString("data")
+                };
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            classes.clear();
+            members.clear();
+            lookups.clear();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.code;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+
+/**
+ * Types.isSubtype and Types.asSuper on the attributed benchmark corpus,
+ * with and without -XDmemoizeTypes.  The types are the generic class
+ * types of the corpus and their parameterized supertypes; an operation
+ * relates every type to every other type or class.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class TypesBenchmarks {
+    public static List<Benchmark> benchmarks(BenchmarkCorpus corpus) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        for (final boolean memo : new boolean[] { false, true }) {
+            String suffix = memo ? ".memo" : "";
+            list.add(new Base("types.isSubtype" + suffix, corpus, memo) {
+                public long op() {
+                    long n = 0;
+                    for (Type t : types)
+                        for (Type s : types)
+                            if (typesImpl.isSubtype(t, s))
+                                n++;
+                    return n;
+                }
+            });
+            list.add(new Base("types.asSuper" + suffix, corpus, memo) {
+                public long op() {
+                    long n = 0;
+                    for (Type t : types)
+                        for (ClassSymbol c : classes)
+                            if (typesImpl.asSuper(t, c) != null)
+                                n++;
+                    return n;
+                }
+            });
+        }
+        return list;
+    }
+
+    static abstract class Base extends Benchmark {
+        final BenchmarkCorpus corpus;
+        final boolean memo;
+        Types typesImpl;
+        final List<ClassSymbol> classes = new ArrayList<ClassSymbol>();
+        final List<Type> types = new ArrayList<Type>();
+
+        Base(String name, BenchmarkCorpus corpus, boolean memo) {
+            super(name);
+            this.corpus = corpus;
+            this.memo = memo;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            JavacTaskImpl task = memo ? corpus.task("-XDmemoizeTypes") : corpus.task();
+            Iterable<? extends Element> elems = task.analyze();
+            typesImpl = Types.instance(task.getContext());
+            for (Element e : elems) {
+                ClassSymbol c = (ClassSymbol) e;
+                classes.add(c);
+                types.add(c.type);
+                types.add(typesImpl.supertype(c.type));
+                types.addAll(typesImpl.interfaces(c.type));
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            classes.clear();
+            types.clear();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.code;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Compares compiling generics heavy code with and without -XDmemoizeTypes.
+ * The generated sources are a small fluent library in the style of a
+ * stream API, with self-bounded builders, and a number of classes which
+ * chain calls through it, so attribution is dominated by subtyping,
+ * asSuper and memberType on parameterized types.
+ *
+ * <pre>
+ *   java -Xbootclasspath/p:&lt;javac classes&gt;:&lt;benchmark classes&gt; \
+ *       com.sun.tools.javac.code.TypesMemoBenchmark [classes] [iterations]
+ * </pre>
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class TypesMemoBenchmark {
+    public static void main(String... args) throws IOException {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = File.createTempFile("typesmemo", "");
+        dir.delete();
+        File src = new File(dir, "src");
+        File out = new File(dir, "out");
+        src.mkdirs();
+        out.mkdirs();
+        String[] files = generate(src, classes);
+
+        for (int round = 0; round < 2; round++) {
+            int n = (round == 0) ? 1 : iterations;
+            long plain = 0, memo = 0;
+            for (int i = 0; i < n; i++) {
+                plain += compile(files, out);
+                memo += compile(files, out, "-XDmemoizeTypes");
+            }
+            if (round > 0) {
+                System.out.format("plain          %,10d ms/compilation%n", plain / n / 1000000);
+                System.out.format("memoizeTypes   %,10d ms/compilation%n", memo / n / 1000000);
+            }
+        }
+
+        File stats = new File(dir, "stats.json");
+        compile(files, out, "-XDmemoizeTypes", "-XDstats=" + stats.getPath());
+        BufferedReader in = new BufferedReader(new FileReader(stats));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().startsWith("\"counters\""))
+                    System.out.println(line.trim());
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static long compile(String[] files, File out, String... options) {
+        String[] args = new String[files.length + 3 + options.length];
+        int n = 0;
+        args[n++] = "-nowarn";
+        args[n++] = "-d";
+        args[n++] = out.getPath();
+        for (String o : options)
+            args[n++] = o;
+        System.arraycopy(files, 0, args, n, files.length);
+        n += files.length;
+        String[] a = new String[n];
+        System.arraycopy(args, 0, a, 0, n);
+
+        StringWriter log = new StringWriter();
+        long start = System.nanoTime();
+        int rc = com.sun.tools.javac.Main.compile(a, new PrintWriter(log));
+        long time = System.nanoTime() - start;
+        if (rc != 0)
+            throw new AssertionError("compilation failed:\n" + log);
+        return time;
+    }
+
+    static String[] generate(File dir, int classes) throws IOException {
+        String[] files = new String[classes + 1];
+        files[0] = write(dir, "Flow",
+            "import java.util.*;\n" +
+            "interface Fn<A, B> { B apply(A a); }\n" +
+            "interface Pred<A> { boolean test(A a); }\n" +
+            "interface Builder<T, B extends Builder<T, B>> {\n" +
+            "    B add(T t);\n" +
+            "    B addAll(Collection<? extends T> ts);\n" +
+            "    Flow<T> build();\n" +
+            "}\n" +
+            "public class Flow<T> implements Iterable<T> {\n" +
+            "    final List<T> items = new ArrayList<T>();\n" +
+            "    public Iterator<T> iterator() { return items.iterator(); }\n" +
+            "    public <R> Flow<R> map(Fn<? super T, ? extends R> f) {\n" +
+            "        Flow<R> r = new Flow<R>();\n" +
+            "        for (T t : items) r.items.add(f.apply(t));\n" +
+            "        return r;\n" +
+            "    }\n" +
+            "    public Flow<T> filter(Pred<? super T> p) {\n" +
+            "        Flow<T> r = new Flow<T>();\n" +
+            "        for (T t : items) if (p.test(t)) r.items.add(t);\n" +
+            "        return r;\n" +
+            "    }\n" +
+            "    public <K> Map<K, List<T>> groupBy(Fn<? super T, ? extends K> f) {\n" +
+            "        Map<K, List<T>> m = new HashMap<K, List<T>>();\n" +
+            "        for (T t : items) {\n" +
+            "            K k = f.apply(t);\n" +
+            "            List<T> l = m.get(k);\n" +
+            "            if (l == null) m.put(k, l = new ArrayList<T>());\n" +
+            "            l.add(t);\n" +
+            "        }\n" +
+            "        return m;\n" +
+            "    }\n" +
+            "    public static <T extends Comparable<? super T>> List<T> sorted(Iterable<? extends T> ts) {\n" +
+            "        List<T> l = new ArrayList<T>();\n" +
+            "        for (T t : ts) l.add(t);\n" +
+            "        Collections.sort(l);\n" +
+            "        return l;\n" +
+            "    }\n" +
+            "    public static <T> FlowBuilder<T> builder() { return new FlowBuilder<T>(); }\n" +
+            "}\n" +
+            "abstract class AbstractBuilder<T, B extends AbstractBuilder<T, B>> implements Builder<T, B> {\n" +
+            "    final Flow<T> flow = new Flow<T>();\n" +
+            "    abstract B self();\n" +
+            "    public B add(T t) { flow.items.add(t); return self(); }\n" +
+            "    public B addAll(Collection<? extends T> ts) { flow.items.addAll(ts); return self(); }\n" +
+            "    public Flow<T> build() { return flow; }\n" +
+            "}\n" +
+            "class FlowBuilder<T> extends AbstractBuilder<T, FlowBuilder<T>> {\n" +
+            "    FlowBuilder<T> self() { return this; }\n" +
+            "}\n");
+        for (int i = 0; i < classes; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("import java.util.*;\n");
+            sb.append("public class User").append(i).append(" {\n");
+            for (int m = 0; m < 20; m++) {
+                sb.append("    Map<Integer, List<String>> m").append(m)
+                  .append("(List<? extends Number> in) {\n")
+                  .append("        Flow<Number> f = Flow.<Number>builder().addAll(in).add(").append(m).append(").build();\n")
+                  .append("        Flow<String> s = f.filter(new Pred<Object>() {\n")
+                  .append("                public boolean test(Object o) { return o != null; }\n")
+                  .append("            }).map(new Fn<Number, Integer>() {\n")
+                  .append("                public Integer apply(Number n) { return n.intValue() + ").append(m).append("; }\n")
+                  .append("            }).map(new Fn<Object, String>() {\n")
+                  .append("                public String apply(Object o) { return String.valueOf(o); }\n")
+                  .append("            });\n")
+                  .append("        List<String> sorted = Flow.sorted(s);\n")
+                  .append("        Map<Integer, List<String>> g = s.groupBy(new Fn<String, Integer>() {\n")
+                  .append("                public Integer apply(String t) { return t.length(); }\n")
+                  .append("            });\n")
+                  .append("        g.put(-1, sorted);\n")
+                  .append("        return g;\n")
+                  .append("    }\n");
+            }
+            sb.append("}\n");
+            files[i + 1] = write(dir, "User" + i, sb.toString());
+        }
+        return files;
+    }
+
+    static String write(File dir, String name, String content) throws IOException {
+        File f = new File(dir, name + ".java");
+        FileWriter w = new FileWriter(f);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+        return f.getPath();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.comp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+
+/**
+ * Resolve.findMethod and Flow on the attributed benchmark corpus.
+ *
+ * <p>findMethod looks up the overloaded methods of every class in its
+ * own environment, with the argument types of each overload, in the
+ * phases Attr tries them: without boxing, then with boxing and varargs.
+ *
+ * <p>Flow analyzes every class again; Flow keeps no state between
+ * classes, so the repeated analysis does the same work as the first.
+ * Every block of the long methods declares locals, so a large block
+ * count (say 600) gives methods with over a thousand variables to track.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class AnalysisBenchmarks {
+    public static List<Benchmark> benchmarks(BenchmarkCorpus corpus) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new Base("resolve.findMethod", corpus) {
+            public long op() {
+                long found = 0;
+                for (Env<AttrContext> env : envs) {
+                    Type site = env.enclClass.sym.type;
+                    for (com.sun.tools.javac.util.List<Type> args : argtypes) {
+                        Symbol sym = resolve.findMethod(env, site, m, args, noTypes,
+                                                        false, false, false);
+                        if (sym.kind >= Kinds.ERRONEOUS)
+                            sym = resolve.findMethod(env, site, m, args, noTypes,
+                                                     true, true, false);
+                        if (sym.kind == Kinds.MTH)
+                            found++;
+                    }
+                }
+                return found;
+            }
+        });
+        list.add(new Base("flow", corpus) {
+            public long op() {
+                for (Env<AttrContext> env : envs)
+                    flow.analyzeTree(env, make.forToplevel(env.toplevel));
+                if (log.nerrors != 0)
+                    throw new AssertionError("flow analysis failed");
+                return envs.size();
+            }
+        });
+        return list;
+    }
+
+    static abstract class Base extends Benchmark {
+        final BenchmarkCorpus corpus;
+        final List<Env<AttrContext>> envs = new ArrayList<Env<AttrContext>>();
+        final List<com.sun.tools.javac.util.List<Type>> argtypes =
+            new ArrayList<com.sun.tools.javac.util.List<Type>>();
+        final com.sun.tools.javac.util.List<Type> noTypes = com.sun.tools.javac.util.List.nil();
+        Resolve resolve;
+        Flow flow;
+        TreeMaker make;
+        Log log;
+        Name m;
+
+        Base(String name, BenchmarkCorpus corpus) {
+            super(name);
+            this.corpus = corpus;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            JavacTaskImpl task = corpus.task();
+            Iterable<? extends Element> elems = task.analyze();
+            Context context = task.getContext();
+            resolve = Resolve.instance(context);
+            flow = Flow.instance(context);
+            make = TreeMaker.instance(context);
+            log = Log.instance(context);
+            m = Names.instance(context).fromString("m");
+            Enter enter = Enter.instance(context);
+            for (Element e : elems)
+                envs.add(enter.getEnv((ClassSymbol) e));
+            Symtab syms = Symtab.instance(context);
+            argtypes.add(com.sun.tools.javac.util.List.of(syms.intType));
+            argtypes.add(com.sun.tools.javac.util.List.of(syms.longType));
+            argtypes.add(com.sun.tools.javac.util.List.of(syms.objectType));
+            argtypes.add(com.sun.tools.javac.util.List.of(syms.stringType, syms.intType));
+            argtypes.add(com.sun.tools.javac.util.List.of(syms.stringType, syms.stringType, syms.objectType));
+        }
+
+        @Override
+        public void tearDown() {
+            envs.clear();
+            argtypes.clear();
+        }
+    }
+}
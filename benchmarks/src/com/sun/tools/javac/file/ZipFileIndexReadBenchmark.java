@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+
+/**
+ * Measures concurrent reads of all entries of an archive through a
+ * ZipFileIndex, once with the default locked RandomAccessFile reads and
+ * once with the index memory mapped (-XDmmappedIO).
+ *
+ * <pre>
+ *   java -Xbootclasspath/p:&lt;javac classes&gt;:&lt;benchmark classes&gt; \
+ *       com.sun.tools.javac.file.ZipFileIndexReadBenchmark [archive] [threads] [seconds]
+ * </pre>
+ * The benchmark must be loaded by the same class loader as the compiler,
+ * as it uses package private parts of ZipFileIndex. The archive defaults
+ * to the running JDK's rt.jar.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ZipFileIndexReadBenchmark {
+    public static void main(String... args) throws Exception {
+        File archive = new File(args.length > 0 ? args[0]
+                : System.getProperty("java.home") + "/lib/rt.jar");
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (boolean mapped : new boolean[] { false, true }) {
+            ZipFileIndex index = new ZipFileIndex(archive, null, false, false, null, mapped);
+            List<RelativeFile> files = new ArrayList<RelativeFile>();
+            for (RelativeDirectory dir : index.getAllDirectories()) {
+                for (String name : index.getFiles(dir))
+                    files.add(new RelativeFile(dir, name));
+            }
+            run(index, files, threads, 1);          // warm up
+            long[] result = run(index, files, threads, seconds);
+            System.out.format("%-6s %2d threads: %,12d reads/s %,10.1f MB/s%n",
+                    mapped ? "mapped" : "locked", threads,
+                    result[0] / seconds, result[1] / (seconds * 1024.0 * 1024.0));
+            index.close();
+        }
+    }
+
+    /** Read entries on `threads' threads for `seconds' seconds, and
+     *  return the number of entries and bytes read.
+     */
+    static long[] run(final ZipFileIndex index, final List<RelativeFile> files,
+                      int threads, int seconds) throws InterruptedException {
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final long end = System.nanoTime() + seconds * 1000000000L;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t * files.size() / threads;
+            new Thread() {
+                @Override
+                public void run() {
+                    long n = 0, b = 0;
+                    try {
+                        for (int i = first; System.nanoTime() < end; i++) {
+                            b += index.read(files.get(i % files.size())).length;
+                            n++;
+                        }
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    } finally {
+                        reads.addAndGet(n);
+                        bytes.addAndGet(b);
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        return new long[] { reads.get(), bytes.get() };
+    }
+}
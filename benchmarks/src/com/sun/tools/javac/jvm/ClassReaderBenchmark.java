@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.jvm;
+
+import com.sun.tools.javac.code.Scope;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * ClassReader reading the class files of the compiled benchmark corpus.
+ * Symbols cannot be read twice, so an operation sets up a new context,
+ * which is included in the figures, and completes every corpus class and
+ * the signatures of its members from the corpus jar.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ClassReaderBenchmark extends Benchmark {
+    final BenchmarkCorpus corpus;
+    String[] classNames;
+
+    public ClassReaderBenchmark(BenchmarkCorpus corpus) {
+        super("classReader");
+        this.corpus = corpus;
+    }
+
+    @Override
+    public void setUp() {
+        classNames = new String[corpus.sources.size()];
+        for (int i = 0; i < classNames.length; i++) {
+            String f = corpus.sources.get(i).getName();
+            classNames[i] = "corpus." + f.substring(0, f.length() - ".java".length());
+        }
+    }
+
+    public long op() {
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        Options.instance(context).put(OptionName.CLASSPATH, corpus.jar.getPath());
+        Symtab.instance(context);
+        ClassReader reader = ClassReader.instance(context);
+        Names names = Names.instance(context);
+        long members = 0;
+        for (String cn : classNames) {
+            Name name = names.fromString(cn);
+            ClassSymbol c = reader.loadClass(name);
+            for (Scope.Entry e = c.members().elems; e != null; e = e.sibling) {
+                Symbol sym = e.sym;
+                sym.complete();
+                members++;
+            }
+        }
+        return members;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.comp.AttrContext;
+import com.sun.tools.javac.comp.Enter;
+import com.sun.tools.javac.comp.Env;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.ListBuffer;
+import com.sun.tools.javac.util.Pair;
+
+/**
+ * Gen and Code generating the bytecode of the benchmark corpus, and
+ * ClassWriter writing its class files into memory.  Gen changes the
+ * trees it generates code for, and ClassWriter drops the constant pool
+ * of a class once it is written, so neither can be repeated on the same
+ * input: before each operation the corpus is attributed, analyzed and
+ * desugared again, and for ClassWriter also generated, which is not
+ * measured.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class GenBenchmarks {
+    public static List<Benchmark> benchmarks(BenchmarkCorpus corpus) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new Base("gen", corpus, false) {
+            public long op() {
+                long generated = 0;
+                for (Pair<Env<AttrContext>, JCClassDecl> p : classes) {
+                    if (gen.genClass(p.fst, p.snd))
+                        generated++;
+                }
+                return generated;
+            }
+        });
+        list.add(new Base("classWriter", corpus, true) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            public long op() throws Exception {
+                long bytes = 0;
+                for (Pair<Env<AttrContext>, JCClassDecl> p : classes) {
+                    out.reset();
+                    writer.writeClassFile(out, p.snd.sym);
+                    bytes += out.size();
+                }
+                return bytes;
+            }
+        });
+        return list;
+    }
+
+    static abstract class Base extends Benchmark {
+        final BenchmarkCorpus corpus;
+        final boolean generate;
+        final List<Pair<Env<AttrContext>, JCClassDecl>> classes =
+            new ArrayList<Pair<Env<AttrContext>, JCClassDecl>>();
+        Gen gen;
+        ClassWriter writer;
+
+        /** @param generate whether prepare also generates code
+         */
+        Base(String name, BenchmarkCorpus corpus, boolean generate) {
+            super(name, true);
+            this.corpus = corpus;
+            this.generate = generate;
+        }
+
+        @Override
+        public void prepare() throws Exception {
+            classes.clear();
+            JavacTaskImpl task = corpus.task();
+            Iterable<? extends Element> elems = task.analyze();
+            Context context = task.getContext();
+            Enter enter = Enter.instance(context);
+            ListBuffer<Env<AttrContext>> envs = new ListBuffer<Env<AttrContext>>();
+            for (Element e : elems)
+                envs.append(enter.getEnv((ClassSymbol) e));
+            classes.addAll(JavaCompiler.instance(context).desugar(envs));
+            gen = Gen.instance(context);
+            writer = ClassWriter.instance(context);
+            if (generate) {
+                for (Pair<Env<AttrContext>, JCClassDecl> p : classes) {
+                    if (!gen.genClass(p.fst, p.snd))
+                        throw new AssertionError("cannot generate " + p.snd.sym);
+                }
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            classes.clear();
+            gen = null;
+            writer = null;
+        }
+    }
+}
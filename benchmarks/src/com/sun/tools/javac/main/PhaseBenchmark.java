@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.main;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.CompileStatistics.Figures;
+import com.sun.tools.javac.main.CompileStatistics.Phase;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Complete compilations of the benchmark corpus, reporting the time of
+ * each phase as recorded with -XDstats.  Gen, Code and ClassWriter are
+ * also measured on their own by GenBenchmarks.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class PhaseBenchmark extends Benchmark {
+    final BenchmarkCorpus corpus;
+    final Map<Phase, long[]> totals = new EnumMap<Phase, long[]>(Phase.class);
+    String[] args;
+
+    public PhaseBenchmark(BenchmarkCorpus corpus) {
+        super("compile");
+        this.corpus = corpus;
+    }
+
+    @Override
+    public void setUp() {
+        File out = new File(corpus.dir, "out");
+        out.mkdirs();
+        args = new String[corpus.sources.size() + 4];
+        args[0] = "-nowarn";
+        args[1] = "-XDstats=" + new File(corpus.dir, "stats.json").getPath();
+        args[2] = "-d";
+        args[3] = out.getPath();
+        for (int i = 0; i < corpus.sources.size(); i++)
+            args[i + 4] = corpus.sources.get(i).getPath();
+    }
+
+    public long op() {
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        StringWriter log = new StringWriter();
+        int rc = new Main("javac", new PrintWriter(log)).compile(args, context);
+        if (rc != 0)
+            throw new AssertionError("compilation failed:\n" + log);
+        CompileStatistics stats = CompileStatistics.instance(context);
+        for (Phase p : Phase.values()) {
+            Figures f = stats.getPhase(p);
+            if (f == null)
+                continue;
+            long[] t = totals.get(p);
+            if (t == null)
+                totals.put(p, t = new long[2]);
+            t[0] += f.getWallNanos();
+            t[1] += f.getAllocatedBytes();
+        }
+        return rc;
+    }
+
+    @Override
+    public void report(PrintStream out, long ops) {
+        // the totals include the warm up operations; only the shares matter
+        long wall = 0;
+        for (long[] t : totals.values())
+            wall += t[0];
+        for (Map.Entry<Phase, long[]> e : totals.entrySet()) {
+            long[] t = e.getValue();
+            out.format("  %-22s %13.1f%% of time %13.1f%% of allocation%n",
+                    e.getKey().name().toLowerCase(), 100.0 * t[0] / wall,
+                    t[1] < 0 ? Double.NaN : 100.0 * t[1] / allocated());
+        }
+        totals.clear();
+    }
+
+    private long allocated() {
+        long alloc = 0;
+        for (long[] t : totals.values())
+            alloc += t[1];
+        return alloc;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.parser;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Benchmark;
+import com.sun.tools.javac.util.BenchmarkCorpus;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Scanner and JavacParser throughput on the benchmark corpus.  An
+ * operation scans or parses all of its sources, given as buffers like
+ * those read by JavacFileManager; names are entered in the same table
+ * throughout, as they are in a compilation.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ParserBenchmarks {
+    public static List<Benchmark> benchmarks(final BenchmarkCorpus corpus) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new Base("scanner", corpus) {
+            public long op() {
+                long tokens = 0;
+                for (char[] s : sources) {
+                    Scanner S = scannerFactory.newScanner(CharBuffer.wrap(s, 0, s.length - 1), false);
+                    do {
+                        S.nextToken();
+                        tokens++;
+                    } while (S.token() != Token.EOF);
+                }
+                return tokens;
+            }
+        });
+        list.add(new Base("parser", corpus) {
+            public long op() {
+                long defs = 0;
+                for (char[] s : sources) {
+                    Parser p = parserFactory.newParser(CharBuffer.wrap(s, 0, s.length - 1),
+                                                       false, false, true);
+                    JCCompilationUnit t = p.parseCompilationUnit();
+                    defs += t.defs.size();
+                }
+                return defs;
+            }
+        });
+        return list;
+    }
+
+    static abstract class Base extends Benchmark {
+        final BenchmarkCorpus corpus;
+        char[][] sources;
+        ScannerFactory scannerFactory;
+        ParserFactory parserFactory;
+
+        Base(String name, BenchmarkCorpus corpus) {
+            super(name);
+            this.corpus = corpus;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            Context context = new Context();
+            JavacFileManager.preRegister(context);
+            scannerFactory = ScannerFactory.instance(context);
+            parserFactory = ParserFactory.instance(context);
+            String[] contents = corpus.read();
+            sources = new char[contents.length][];
+            // leave room for the EOI the scanner appends, as JavacFileManager does
+            for (int i = 0; i < contents.length; i++)
+                sources[i] = Arrays.copyOf(contents[i].toCharArray(), contents[i].length() + 1);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.regex.Pattern;
+
+/**
+ * A benchmark in the suite run by CompilerBenchmarks.  An operation is
+ * repeated for a fixed time after a warm up, and the throughput, the time
+ * per operation and, where the VM can measure it, the bytes allocated per
+ * operation are reported.  There is no fork per benchmark as with JMH, so
+ * the order in which benchmarks run can influence their figures; run a
+ * single benchmark with a pattern when comparing changes.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public abstract class Benchmark {
+    /** Keeps the results of the operations live. */
+    static volatile long sink;
+
+    public final String name;
+
+    /** Whether prepare is called before each operation. */
+    final boolean prepared;
+
+    protected Benchmark(String name) {
+        this(name, false);
+    }
+
+    /** @param prepared whether the operation uses up its input, which
+     *  prepare must then make again before each operation
+     */
+    protected Benchmark(String name, boolean prepared) {
+        this.name = name;
+        this.prepared = prepared;
+    }
+
+    /** Prepare the benchmark; not measured. */
+    public void setUp() throws Exception { }
+
+    /** Prepare the input of the next operation, if the benchmark was
+     *  created as prepared; not measured. */
+    public void prepare() throws Exception { }
+
+    /** Perform one operation.
+     *  @return a value depending on the work done, such as a count
+     */
+    public abstract long op() throws Exception;
+
+    /** Report figures of its own after the measurement. */
+    public void report(PrintStream out, long ops) { }
+
+    /** Release what setUp acquired. */
+    public void tearDown() throws Exception { }
+
+    /** Run the benchmarks whose names match the pattern. */
+    public static void run(Iterable<? extends Benchmark> benchmarks, Pattern pattern,
+                           int seconds, PrintStream out) throws Exception {
+        for (Benchmark b : benchmarks) {
+            if (!pattern.matcher(b.name).find())
+                continue;
+            b.setUp();
+            try {
+                measure(b, 1);          // warm up
+                long[] r = measure(b, seconds);
+                long ops = r[0];
+                out.format("%-24s %,14.1f ops/s %,14.1f us/op", b.name,
+                        ops * 1e9 / r[1], r[1] / 1e3 / ops);
+                if (r[2] >= 0)
+                    out.format(" %,16d B/op", r[2] / ops);
+                out.println();
+                b.report(out, ops);
+            } finally {
+                b.tearDown();
+            }
+        }
+    }
+
+    /** @return the operations, nanoseconds and bytes allocated, or -1
+     *  if allocation cannot be measured
+     */
+    static long[] measure(Benchmark b, int seconds) throws Exception {
+        if (b.prepared)
+            return measurePrepared(b, seconds);
+        long alloc = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long ops = 0;
+        long sum = 0;
+        long now;
+        do {
+            sum += b.op();
+            ops++;
+        } while ((now = System.nanoTime()) < end);
+        sink += sum;
+        long allocated = (alloc < 0) ? -1 : allocatedBytes() - alloc;
+        return new long[] { ops, now - start, allocated };
+    }
+
+    /** Like measure, but each operation is timed on its own, after an
+     *  unmeasured call of prepare.  Preparing counts towards the time
+     *  the benchmark runs, so there are fewer operations.
+     */
+    static long[] measurePrepared(Benchmark b, int seconds) throws Exception {
+        long end = System.nanoTime() + seconds * 1000000000L;
+        long ops = 0;
+        long sum = 0;
+        long nanos = 0;
+        long allocated = 0;
+        do {
+            b.prepare();
+            long alloc = allocatedBytes();
+            long start = System.nanoTime();
+            sum += b.op();
+            nanos += System.nanoTime() - start;
+            allocated = (alloc < 0 || allocated < 0) ? -1 : allocated + allocatedBytes() - alloc;
+            ops++;
+        } while (System.nanoTime() < end);
+        sink += sum;
+        return new long[] { ops, nanos, allocated };
+    }
+
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled())
+                return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
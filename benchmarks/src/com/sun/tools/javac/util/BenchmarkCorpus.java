@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.StandardJavaFileManager;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+
+/**
+ * A synthetic code base for the benchmarks, generated from a fixed seed
+ * so that figures are comparable between runs and machines.  It is a
+ * generic class hierarchy whose classes have overloaded methods, which
+ * exercise subtyping and method resolution, and one long method each
+ * with loops, switches and try statements, which exercise Flow, Gen and
+ * Code.  The sources are compiled once into a class directory and a jar
+ * for the benchmarks that read class files.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class BenchmarkCorpus {
+    public final File dir;
+    public final File src;
+    public final File classes;
+    public final File jar;
+    public final java.util.List<File> sources = new ArrayList<File>();
+
+    /** Generate and compile a corpus of the given number of classes,
+     *  with long methods of the given number of blocks, in a new
+     *  temporary directory.
+     */
+    public static BenchmarkCorpus create(int classCount, int blocks) throws IOException {
+        File dir = File.createTempFile("javac-bench", "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("cannot create " + dir);
+        BenchmarkCorpus corpus = new BenchmarkCorpus(dir);
+        corpus.generate(classCount, blocks, new Random(42));
+        corpus.compile();
+        return corpus;
+    }
+
+    BenchmarkCorpus(File dir) {
+        this.dir = dir;
+        src = new File(dir, "src");
+        classes = new File(dir, "classes");
+        jar = new File(dir, "corpus.jar");
+    }
+
+    /** The contents of the sources. */
+    public String[] read() throws IOException {
+        String[] contents = new String[sources.size()];
+        for (int i = 0; i < contents.length; i++) {
+            File f = sources.get(i);
+            byte[] b = new byte[(int) f.length()];
+            InputStream in = new FileInputStream(f);
+            try {
+                int n = 0;
+                while (n < b.length)
+                    n += in.read(b, n, b.length - n);
+            } finally {
+                in.close();
+            }
+            contents[i] = new String(b, "UTF-8");
+        }
+        return contents;
+    }
+
+    /** Create a compilation task for the sources, writing classes into
+     *  a scratch directory so the compiled corpus is left intact.
+     */
+    public JavacTaskImpl task(String... options) throws IOException {
+        File out = new File(dir, "out");
+        out.mkdirs();
+        java.util.List<String> opts = new ArrayList<String>();
+        opts.addAll(Arrays.asList("-nowarn", "-d", out.getPath()));
+        opts.addAll(Arrays.asList(options));
+        JavacTool tool = JavacTool.create();
+        StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null);
+        return (JavacTaskImpl) tool.getTask(null, fm, null, opts, null,
+                fm.getJavaFileObjectsFromFiles(sources));
+    }
+
+    private void generate(int classCount, int blocks, Random r) throws IOException {
+        File pkg = new File(src, "corpus");
+        pkg.mkdirs();
+        write(pkg, "Shape",
+              "package corpus;\n\n" +
+              "public interface Shape<T> {\n" +
+              "    T value();\n" +
+              "}\n");
+        write(pkg, "Root",
+              "package corpus;\n\n" +
+              "import java.util.*;\n\n" +
+              "public abstract class Root<T> implements Shape<T>, Comparable<Root<?>> {\n" +
+              "    protected T value;\n" +
+              "    protected int f0, f1;\n" +
+              "    public T value() { return value; }\n" +
+              "    public int compareTo(Root<?> o) { return f0 - o.f0; }\n" +
+              "    public int m(int x) { return x + f1; }\n" +
+              "    public <U extends Comparable<? super U>> U max(Collection<? extends U> c) {\n" +
+              "        return Collections.max(c);\n" +
+              "    }\n" +
+              "}\n");
+        for (int i = 0; i < classCount; i++) {
+            String sup = (i == 0) ? "Root" : "C" + r.nextInt(i);
+            StringBuilder sb = new StringBuilder();
+            sb.append("package corpus;\n\n")
+              .append("import java.util.*;\n\n")
+              .append("/**\n * Generated class ").append(i).append(".\n */\n")
+              .append("public class C").append(i).append("<T> extends ").append(sup).append("<T>");
+            if (r.nextBoolean())
+                sb.append(" implements Iterable<Map<String, List<T>>>");
+            sb.append(" {\n")
+              .append("    static final String NAME = \"C").append(i).append("\";\n")
+              .append("    static final long MASK = 0x").append(Long.toHexString(r.nextLong())).append("L;\n")
+              .append("    protected final List<Map<String, List<T>>> data = new ArrayList<Map<String, List<T>>>();\n\n");
+            if (sb.indexOf("implements Iterable") >= 0)
+                sb.append("    public Iterator<Map<String, List<T>>> iterator() { return data.iterator(); }\n\n");
+            sb.append("    public long m(long x) { return x ^ MASK; }\n")
+              .append("    public Object m(Object o) { return o == null ? NAME : o; }\n")
+              .append("    public String m(String s, Object... rest) { return s + rest.length; }\n")
+              .append("    public <U extends T> List<U> pick(Collection<? extends U> c) {\n")
+              .append("        return new ArrayList<U>(c);\n")
+              .append("    }\n\n")
+              .append("    // A long method, for flow analysis and code generation.\n")
+              .append("    public int big(int n, List<T> list) {\n")
+              .append("        int total = 0;\n");
+            for (int j = 0; j < blocks; j++)
+                block(sb, j, r);
+            sb.append("        return total;\n")
+              .append("    }\n")
+              .append("}\n");
+            write(pkg, "C" + i, sb.toString());
+        }
+    }
+
+    private void block(StringBuilder sb, int j, Random r) {
+        String a = "a" + j;
+        sb.append("        int ").append(a).append(" = n + ").append(r.nextInt(100)).append(";\n");
+        switch (r.nextInt(5)) {
+        case 0:
+            sb.append("        for (int i = 0; i < ").append(a).append("; i++) {\n")
+              .append("            if ((i & ").append(1 + r.nextInt(7)).append(") == 0)\n")
+              .append("                total += m(i);\n")
+              .append("            else\n")
+              .append("                total += (int) m((long) i);\n")
+              .append("        }\n");
+            break;
+        case 1:
+            sb.append("        switch (").append(a).append(" % 4) {\n")
+              .append("        case 0: total++; break;\n")
+              .append("        case 1: total--; break;\n")
+              .append("        case 2: total += f0; // fall through\n")
+              .append("        default: total ^= ").append(j).append(";\n")
+              .append("        }\n");
+            break;
+        case 2:
+            sb.append("        try {\n")
+              .append("            total += Integer.parseInt(\"").append(r.nextInt(1000)).append("\");\n")
+              .append("        } catch (NumberFormatException e) {\n")
+              .append("            total = -total;\n")
+              .append("        } finally {\n")
+              .append("            f0++;\n")
+              .append("        }\n");
+            break;
+        case 3:
+            sb.append("        while (total > ").append(1000 + r.nextInt(1000)).append(")\n")
+              .append("            total >>= 1;\n")
+              .append("        if (list != null && !list.isEmpty()) {\n")
+              .append("            Object o = m((Object) list.get(0));\n")
+              .append("            total += o.hashCode() + pick(list).size();\n")
+              .append("        }\n");
+            break;
+        default:
+            sb.append("        total += m(\"s").append(j).append("\", ").append(a).append(", list).length();\n")
+              .append("        total += max(Arrays.asList(").append(a).append(", total, ").append(j).append("));\n");
+            break;
+        }
+    }
+
+    private void write(File pkg, String name, String content) throws IOException {
+        File f = new File(pkg, name + ".java");
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+        sources.add(f);
+    }
+
+    private void compile() throws IOException {
+        classes.mkdirs();
+        String[] args = new String[sources.size() + 3];
+        args[0] = "-nowarn";
+        args[1] = "-d";
+        args[2] = classes.getPath();
+        for (int i = 0; i < sources.size(); i++)
+            args[i + 3] = sources.get(i).getPath();
+        StringWriter log = new StringWriter();
+        if (com.sun.tools.javac.Main.compile(args, new PrintWriter(log)) != 0)
+            throw new IOException("cannot compile the corpus:\n" + log);
+
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            File pkg = new File(classes, "corpus");
+            String[] names = pkg.list();
+            Arrays.sort(names);
+            byte[] buf = new byte[8192];
+            for (String name : names) {
+                out.putNextEntry(new JarEntry("corpus/" + name));
+                InputStream in = new FileInputStream(new File(pkg, name));
+                try {
+                    int n;
+                    while ((n = in.read(buf)) > 0)
+                        out.write(buf, 0, n);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.util;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Names.fromChars on the identifiers of the benchmark corpus, with the
+ * default SharedNameTable and with ConcurrentNameTable.  After the first
+ * operation every lookup finds an existing name, as most lookups in a
+ * compilation do.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class NameTableBenchmarks {
+    public static java.util.List<Benchmark> benchmarks(BenchmarkCorpus corpus) {
+        java.util.List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new FromChars("names.shared", corpus, null));
+        list.add(new FromChars("names.concurrent", corpus, "useConcurrentNameTable"));
+        return list;
+    }
+
+    static class FromChars extends Benchmark {
+        final BenchmarkCorpus corpus;
+        final String option;
+        Names names;
+        char[] chars;
+        int[] offsets;
+        int[] lengths;
+
+        FromChars(String name, BenchmarkCorpus corpus, String option) {
+            super(name);
+            this.corpus = corpus;
+            this.option = option;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            Context context = new Context();
+            if (option != null)
+                Options.instance(context).put(option, option);
+            names = Names.instance(context);
+
+            StringBuilder sb = new StringBuilder();
+            for (String s : corpus.read())
+                sb.append(s);
+            chars = sb.toString().toCharArray();
+            Matcher m = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*").matcher(sb);
+            ArrayList<int[]> idents = new ArrayList<int[]>();
+            while (m.find())
+                idents.add(new int[] { m.start(), m.end() - m.start() });
+            offsets = new int[idents.size()];
+            lengths = new int[idents.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = idents.get(i)[0];
+                lengths[i] = idents.get(i)[1];
+            }
+        }
+
+        public long op() {
+            long sum = 0;
+            for (int i = 0; i < offsets.length; i++)
+                sum += names.fromChars(chars, offsets[i], lengths[i]).getIndex();
+            return sum;
+        }
+
+        @Override
+        public void tearDown() {
+            names.dispose();
+        }
+    }
+}
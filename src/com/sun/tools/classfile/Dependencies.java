@@ -125,6 +125,16 @@ public class Dependencies {
         return new APIDependencyFinder(AccessFlags.ACC_PRIVATE);
     }
 
+    /**
+     * Get a finder used to locate the dependencies for a class, as found
+     * in its constant pool. These include the classes used in the bodies
+     * of its methods, as well as the classes used in its declarations.
+     * @return a class dependency finder
+     */
+    public static Finder getClassDependencyFinder() {
+        return new ClassDependencyFinder();
+    }
+
     /**
      * Get a finder used to locate the API dependencies for a class.
      * These include the superclass, superinterfaces, and classes referenced in
@@ -27,15 +27,39 @@ package com.sun.tools.javac;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.logging.Logger;
 import javax.tools.*;
 
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.CommandLine;
+import com.sun.tools.javac.main.Main;
+import com.sun.tools.javac.main.OptionName;
+import com.sun.tools.javac.util.Context;
+
+import static com.sun.tools.javac.main.OptionName.*;
+
 /**
  * Java Compiler Server.  Can be used to speed up a set of (small)
  * compilation tasks by caching jar files between compilations.
  *
+ * <p>A client connects, sends one argument per line, optionally a
+ * {@code PWD:<dir>} line giving the directory relative source file
+ * names, {@code @} files and the files and paths given to options are
+ * resolved against and a {@code DIAGNOSTICS} line, and then
+ * {@code END}.  The compiler output is streamed back while the
+ * compilation runs; with {@code DIAGNOSTICS}, each diagnostic is sent
+ * as a single {@code DIAG:} line as soon as it is reported.  The
+ * response ends with {@code EXIT: <result>}.
+ *
+ * <p>Requests with the same working directory and options share a warm
+ * file manager, so the class path is only expanded once and its archives
+ * stay open and indexed between compilations.  Class files read from
+ * archives are shared by all requests.  Requests sharing a file
+ * manager are compiled one at a time; other requests run concurrently.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own
  * risk.  This code and its internal interfaces are subject to change
@@ -48,7 +72,6 @@ class Server implements Runnable {
     private final BufferedReader in;
     private final OutputStream out;
     private final boolean isSocket;
-    private static final JavaCompiler tool = ToolProvider.getSystemJavaCompiler();
     private static Logger logger = Logger.getLogger("com.sun.tools.javac");
     static class CwdFileManager extends ForwardingJavaFileManager<JavaFileManager> {
         String cwd;
@@ -68,14 +91,35 @@ class Server implements Runnable {
 //          return super.getFileForInput(getAbsoluteName(name));
 //      }
     }
-    // static CwdFileManager fm = new CwdFileManager(tool.getStandardFileManager());
-    static StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null);
+
+    /** The maximum number of warm file managers kept between requests.
+     */
+    static final int MAX_FILE_MANAGERS = 16;
+
+    /** Warm file managers, keyed by working directory and options, in
+     *  least recently used order.
+     */
+    private static final Map<String, JavacFileManager> fileManagers =
+        new LinkedHashMap<String, JavacFileManager>(MAX_FILE_MANAGERS, 0.75f, true);
+
+    /** Options whose argument is a file, a directory, or a path.
+     */
+    private static final Set<String> pathOptions = new HashSet<String>();
+
+    /** Options that are joined to the path they are given.
+     */
+    private static final OptionName[] joinedPathOptions = {
+        XBOOTCLASSPATH_PREPEND, XBOOTCLASSPATH_APPEND, XBOOTCLASSPATH,
+        DJAVA_EXT_DIRS, DJAVA_ENDORSED_DIRS
+    };
+
     static {
-        // Use the same file manager for all compilations.  This will
-        // cache jar files in the standard file manager.  Use
-        // tool.getStandardFileManager().close() to release.
-        // FIXME tool.setFileManager(fm);
         logger.setLevel(java.util.logging.Level.SEVERE);
+        for (OptionName o : new OptionName[] {
+                CLASSPATH, CP, SOURCEPATH, BOOTCLASSPATH, EXTDIRS, ENDORSEDDIRS,
+                PROCESSORPATH, D, S, XSTDOUT }) {
+            pathOptions.add(o.optionName);
+        }
     }
     private Server(BufferedReader in, OutputStream out, boolean isSocket) {
         this.in = in;
@@ -102,11 +146,13 @@ class Server implements Runnable {
                 System.exit(0);
                 line = null;
             }
-            // fm.cwd=null;
             String cwd = null;
+            boolean streamDiagnostics = false;
             while (line != null) {
                 if (line.startsWith("PWD:")) {
                     cwd = line.substring(4);
+                } else if (line.equals("DIAGNOSTICS")) {
+                    streamDiagnostics = true;
                 } else if (line.equals("END")) {
                     break;
                 } else if (!"-XDstdout".equals(line)) {
@@ -120,16 +166,9 @@ class Server implements Runnable {
                     line = null;
                 }
             }
-            Iterable<File> path = cwd == null ? null : Arrays.<File>asList(new File(cwd));
-            // try { in.close(); } catch (IOException e) {}
             long msec = System.currentTimeMillis();
             try {
-                synchronized (tool) {
-                    for (StandardLocation location : StandardLocation.values())
-                        fm.setLocation(location, path);
-                    res = compile(out, fm, args);
-                    // FIXME res = tool.run((InputStream)null, null, out, args.toArray(new String[args.size()]));
-                }
+                res = compile(out, cwd, args, streamDiagnostics);
             } catch (Throwable ex) {
                 logger.log(java.util.logging.Level.SEVERE, args.toString(), ex);
                 PrintWriter p = new PrintWriter(out, true);
@@ -141,7 +180,6 @@ class Server implements Runnable {
             } else {
                 logger.info(String.format("success: %s", args));
             }
-            // res = compile(args.toArray(new String[args.size()]), out);
             msec -= System.currentTimeMillis();
             logger.info(String.format("Real time: %sms", -msec));
         } finally {
@@ -188,9 +226,145 @@ class Server implements Runnable {
         }
     }
 
-    private int compile(OutputStream out, StandardJavaFileManager fm, List<String> args) {
-        // FIXME parse args and use getTask
-        // System.err.println("Running " + args);
-        return tool.run(null, null, out, args.toArray(new String[args.size()]));
+    private int compile(OutputStream out, String cwd, List<String> args, boolean streamDiagnostics) {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, Charset.forName("UTF-8")), true);
+        List<String> compilerArgs = new ArrayList<String>(args.size());
+        StringBuilder key = new StringBuilder(cwd == null ? "" : cwd);
+        String pathOption = null;
+        for (String arg : expandAtFiles(cwd, args)) {
+            if (pathOption != null) {
+                arg = resolvePath(cwd, arg);
+                pathOption = null;
+            } else if (pathOptions.contains(arg)) {
+                pathOption = arg;
+            } else if (arg.endsWith(".java")) {
+                compilerArgs.add(resolve(cwd, arg));
+                continue;
+            } else {
+                for (OptionName o : joinedPathOptions) {
+                    if (arg.startsWith(o.optionName)) {
+                        arg = o.optionName + resolvePath(cwd, arg.substring(o.optionName.length()));
+                        break;
+                    }
+                }
+            }
+            key.append('\n').append(arg);
+            compilerArgs.add(arg);
+        }
+        // class files read from archives are shared by all requests
+        compilerArgs.add("-XDshareClassFiles");
+
+        final JavacFileManager fm = getFileManager(key.toString());
+        synchronized (fm) {
+            Context context = new Context();
+            context.put(JavaFileManager.class, new Context.Factory<JavaFileManager>() {
+                public JavaFileManager make(Context c) {
+                    c.put(JavaFileManager.class, fm);
+                    fm.setContext(c);
+                    return fm;
+                }
+            });
+            if (streamDiagnostics)
+                context.put(DiagnosticListener.class, new DiagnosticStreamer(pw));
+            try {
+                return new Main("javac", pw).compile(compilerArgs.toArray(new String[compilerArgs.size()]), context);
+            } finally {
+                // normally done when the compiler is closed; an archive left
+                // open would otherwise be appended to by the next request
+                fm.finishOutputArchive();
+                pw.flush();
+            }
+        }
+    }
+
+    /** Replace each {@code @file} argument by the arguments in the file,
+     *  which is found relative to the given directory. A file that cannot
+     *  be read is left for the compiler to report.
+     */
+    private static List<String> expandAtFiles(String cwd, List<String> args) {
+        List<String> expanded = new ArrayList<String>(args.size());
+        for (String arg : args) {
+            if (arg.startsWith(AT.optionName) && arg.length() > 1) {
+                String file = AT.optionName + resolve(cwd, arg.substring(1));
+                try {
+                    expanded.addAll(Arrays.asList(CommandLine.parse(new String[] { file })));
+                } catch (IOException e) {
+                    expanded.add(file);
+                }
+            } else {
+                expanded.add(arg);
+            }
+        }
+        return expanded;
+    }
+
+    /** Resolve a file name against the given directory, if there is one.
+     */
+    private static String resolve(String cwd, String name) {
+        if (cwd == null || name.length() == 0 || new File(name).isAbsolute())
+            return name;
+        return new File(cwd, name).getPath();
+    }
+
+    /** Resolve each element of a path against the given directory.
+     */
+    private static String resolvePath(String cwd, String path) {
+        if (cwd == null)
+            return path;
+        StringBuilder sb = new StringBuilder();
+        String sep = "";
+        for (String elt : path.split(File.pathSeparator, -1)) {
+            sb.append(sep).append(resolve(cwd, elt));
+            sep = File.pathSeparator;
+        }
+        return sb.toString();
+    }
+
+    /** Get the warm file manager for requests with the given key, creating
+     *  it if necessary and closing the least recently used one if there are
+     *  more than MAX_FILE_MANAGERS.
+     */
+    private static JavacFileManager getFileManager(String key) {
+        JavacFileManager fm;
+        JavacFileManager evicted = null;
+        synchronized (fileManagers) {
+            fm = fileManagers.get(key);
+            if (fm == null) {
+                fm = new JavacFileManager(new Context(), false, null);
+                fileManagers.put(key, fm);
+                if (fileManagers.size() > MAX_FILE_MANAGERS) {
+                    Iterator<JavacFileManager> iter = fileManagers.values().iterator();
+                    evicted = iter.next();
+                    iter.remove();
+                }
+            }
+        }
+        if (evicted != null) {
+            synchronized (evicted) {
+                evicted.close();
+            }
+        }
+        return fm;
+    }
+
+    /** Send each diagnostic to the client on its own line as it is reported.
+     */
+    static class DiagnosticStreamer implements DiagnosticListener<JavaFileObject> {
+        private final PrintWriter out;
+        DiagnosticStreamer(PrintWriter out) {
+            this.out = out;
+        }
+        public void report(Diagnostic<? extends JavaFileObject> d) {
+            JavaFileObject source = d.getSource();
+            String message = d.getMessage(null).replace("\\", "\\\\").replace("\n", "\\n");
+            synchronized (out) {
+                out.format("DIAG: %s %s:%d:%d %s %s%n",
+                           d.getKind(),
+                           source == null ? "-" : source.getName(),
+                           d.getLineNumber(), d.getColumnNumber(),
+                           d.getCode(), message);
+                out.flush();
+            }
+        }
     }
 }
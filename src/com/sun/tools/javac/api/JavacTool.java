@@ -49,6 +49,7 @@ import com.sun.tools.javac.main.JavacOption;
 import com.sun.tools.javac.main.Main;
 import com.sun.tools.javac.main.RecognizedOptions.GrumpyHelper;
 import com.sun.tools.javac.main.RecognizedOptions;
+import com.sun.tools.javac.memory.MemoryFileManager;
 import com.sun.tools.javac.util.ClientCodeException;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Log;
@@ -142,6 +143,26 @@ public final class JavacTool implements JavaCompiler {
     }
 
     public JavacFileManager getStandardFileManager(
+        DiagnosticListener<? super JavaFileObject> diagnosticListener,
+        Locale locale,
+        Charset charset) {
+        Context context = fileManagerContext(diagnosticListener, locale, charset);
+        return new JavacFileManager(context, true, charset);
+    }
+
+    /**
+     * Gets a file manager that keeps source files and compiler output in
+     * memory; see MemoryFileManager.
+     */
+    public MemoryFileManager getMemoryFileManager(
+        DiagnosticListener<? super JavaFileObject> diagnosticListener,
+        Locale locale,
+        Charset charset) {
+        Context context = fileManagerContext(diagnosticListener, locale, charset);
+        return new MemoryFileManager(context, true, charset);
+    }
+
+    private static Context fileManagerContext(
         DiagnosticListener<? super JavaFileObject> diagnosticListener,
         Locale locale,
         Charset charset) {
@@ -153,7 +174,7 @@ public final class JavacTool implements JavaCompiler {
                 ? new PrintWriter(System.err, true)
                 : new PrintWriter(new OutputStreamWriter(System.err, charset), true);
         context.put(Log.outKey, pw);
-        return new JavacFileManager(context, true, charset);
+        return context;
     }
 
     public JavacTask getTask(Writer out,
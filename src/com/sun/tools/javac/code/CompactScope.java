@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.code;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sun.tools.javac.util.*;
+
+/** A scope that stores its symbols in arrays instead of in a table of
+ *  linked Entry objects. It provides the same lookup semantics as
+ *  Scope: a lookup returns the most recently entered symbol with the
+ *  given name that is accepted by the filter, and hidden symbols with
+ *  the same name can be reached through getElementsByName. As it hands
+ *  out symbols rather than entries, it is used for scopes that stay
+ *  within one part of the compiler, such as the scopes of Lower.
+ *
+ *  <p>Entries are numbered in order of entry. The symbol, name and
+ *  shadowed entry of entry n are kept at index n of parallel arrays,
+ *  and a table with open addressing and linear probing maps each name
+ *  to its most recent entry. Entering a symbol does not allocate.
+ *
+ *  <p>Like Scope.dup, dup creates a nested scope which shares the arrays
+ *  of its outer scope. The nested scope just records the number of
+ *  entries at that point, and leave rolls the arrays back to it. Symbols
+ *  must not be entered into an outer scope while a nested scope is
+ *  active.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class CompactScope {
+
+    /** The arrays shared by a scope and the scopes nested in it.
+     */
+    private static class Storage {
+        /** The symbols, names and shadowed entries of all entries.
+         *  shadowed[n] is the previous entry with the same name, or -1.
+         */
+        Symbol[] syms = new Symbol[INITIAL_SIZE];
+        Name[] names = new Name[INITIAL_SIZE];
+        int[] shadowed = new int[INITIAL_SIZE];
+
+        /** The number of entries.
+         */
+        int size;
+
+        /** The hash table: keys[i] is a name, and heads[i] is the most
+         *  recent entry with that name, or -1 if all entries with that
+         *  name have been left.
+         */
+        Name[] keys = new Name[INITIAL_SIZE];
+        int[] heads = new int[INITIAL_SIZE];
+
+        /** The number of used slots in the hash table.
+         */
+        int nkeys;
+    }
+
+    /** The initial size of the arrays and the hash table.
+     */
+    private static final int INITIAL_SIZE = 0x10;
+
+    private final Storage storage;
+
+    /** The number of entries in outer scopes, i.e. the first entry of
+     *  this scope.
+     */
+    private final int start;
+
+    /** The number of scopes nested in this scope.
+     */
+    private int shared;
+
+    /** Next enclosing scope.
+     */
+    public final CompactScope next;
+
+    /** The scope's owner.
+     */
+    public final Symbol owner;
+
+    private CompactScope(Storage storage, CompactScope next, Symbol owner) {
+        Assert.checkNonNull(owner);
+        this.storage = storage;
+        this.next = next;
+        this.owner = owner;
+        this.start = storage.size;
+    }
+
+    /** Construct a new, empty scope with given owner.
+     */
+    public CompactScope(Symbol owner) {
+        this(new Storage(), null, owner);
+    }
+
+    /** Construct a fresh scope within this scope, with same owner,
+     *  which shares its arrays with this scope.
+     */
+    public CompactScope dup() {
+        return dup(this.owner);
+    }
+
+    /** Construct a fresh scope within this scope, with new owner,
+     *  which shares its arrays with this scope.
+     */
+    public CompactScope dup(Symbol newOwner) {
+        shared++;
+        return new CompactScope(storage, this, newOwner);
+    }
+
+    /** Remove all entries of this scope, and return the enclosing scope.
+     */
+    public CompactScope leave() {
+        Assert.check(shared == 0);
+        Storage s = storage;
+        for (int n = s.size - 1; n >= start; n--) {
+            s.heads[getIndex(s.names[n])] = s.shadowed[n];
+            s.syms[n] = null;
+            s.names[n] = null;
+        }
+        s.size = start;
+        Assert.check(next.shared > 0);
+        next.shared--;
+        return next;
+    }
+
+    /** Enter symbol sym in this scope.
+     */
+    public void enter(Symbol sym) {
+        Assert.check(shared == 0);
+        Storage s = storage;
+        if (s.size == s.syms.length) {
+            int length = s.size * 2;
+            s.syms = Arrays.copyOf(s.syms, length);
+            s.names = Arrays.copyOf(s.names, length);
+            s.shadowed = Arrays.copyOf(s.shadowed, length);
+        }
+        int i = getIndex(sym.name);
+        if (s.keys[i] == null) {
+            s.keys[i] = sym.name;
+            s.heads[i] = -1;
+            s.nkeys++;
+        }
+        int n = s.size++;
+        s.syms[n] = sym;
+        s.names[n] = sym.name;
+        s.shadowed[n] = s.heads[i];
+        s.heads[i] = n;
+        if (s.nkeys * 3 >= s.keys.length * 2)
+            rehash();
+    }
+
+    /** Return the most recently entered symbol with given name, starting
+     *  in this scope and proceeding outwards, or null if there is none.
+     */
+    public Symbol lookup(Name name) {
+        int n = head(name);
+        return n >= 0 ? storage.syms[n] : null;
+    }
+
+    /** Return the most recently entered symbol with given name that is
+     *  accepted by sf, starting in this scope and proceeding outwards, or
+     *  null if there is none.
+     */
+    public Symbol lookup(Name name, Filter<Symbol> sf) {
+        Storage s = storage;
+        for (int n = head(name); n >= 0; n = s.shadowed[n]) {
+            Symbol sym = s.syms[n];
+            if (sf.accepts(sym))
+                return sym;
+        }
+        return null;
+    }
+
+    /** Look for the slot of a name in the hash table. If the name is not
+     *  in the table, this is the free slot where it should be put.
+     */
+    private int getIndex(Name name) {
+        Name[] keys = storage.keys;
+        int hashMask = keys.length - 1;
+        // Name hash codes of a shared name table are offsets in its byte
+        // array, which are close together; spread them over the table.
+        int h = name.hashCode() * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & hashMask;
+        for (;;) {
+            Name key = keys[i];
+            if (key == name || key == null)
+                return i;
+            i = (i + 1) & hashMask;
+        }
+    }
+
+    /** Return the most recent entry with given name, or -1 if there is
+     *  none.
+     */
+    private int head(Name name) {
+        int i = getIndex(name);
+        return storage.keys[i] == null ? -1 : storage.heads[i];
+    }
+
+    /** Double the size of the hash table, dropping names which no longer
+     *  have any entries.
+     */
+    private void rehash() {
+        Storage s = storage;
+        Name[] oldkeys = s.keys;
+        int[] oldheads = s.heads;
+        s.keys = new Name[oldkeys.length * 2];
+        s.heads = new int[oldkeys.length * 2];
+        s.nkeys = 0;
+        for (int i = 0; i < oldkeys.length; i++) {
+            if (oldkeys[i] != null && oldheads[i] >= 0) {
+                int j = getIndex(oldkeys[i]);
+                s.keys[j] = oldkeys[i];
+                s.heads[j] = oldheads[i];
+                s.nkeys++;
+            }
+        }
+    }
+
+    public Iterable<Symbol> getElementsByName(Name name) {
+        return getElementsByName(name, Scope.noFilter);
+    }
+
+    /** Return the symbols with given name in this scope and its enclosing
+     *  scopes that are accepted by sf, most recently entered first.
+     */
+    public Iterable<Symbol> getElementsByName(final Name name, final Filter<Symbol> sf) {
+        return new Iterable<Symbol>() {
+            public Iterator<Symbol> iterator() {
+                return new Iterator<Symbol>() {
+                    int n = head(name);
+                    {
+                        skip();
+                    }
+                    private void skip() {
+                        while (n >= 0 && !sf.accepts(storage.syms[n]))
+                            n = storage.shadowed[n];
+                    }
+                    public boolean hasNext() {
+                        return n >= 0;
+                    }
+                    public Symbol next() {
+                        if (n < 0)
+                            throw new NoSuchElementException();
+                        Symbol sym = storage.syms[n];
+                        n = storage.shadowed[n];
+                        skip();
+                        return sym;
+                    }
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("CompactScope[");
+        CompactScope s = this;
+        String sep = "";
+        for (int n = storage.size - 1; n >= 0; n--) {
+            while (n < s.start) {
+                s = s.next;
+                result.append(" | ");
+                sep = "";
+            }
+            result.append(sep);
+            result.append(storage.syms[n]);
+            sep = ", ";
+        }
+        result.append("]");
+        return result.toString();
+    }
+}
@@ -454,7 +454,12 @@ public abstract class Symbol implements Element {
             completer = null;
             // 并传递当前符号作为调用方法的参数
             // 调用这个方法可以完成ClassSymbol或PackageSymbol对象中members_field的填充
-            c.complete(this);
+            try {
+                c.complete(this);
+            } finally {
+                // 完成后类型间的关系可能发生变化，使Types中缓存的结果失效
+                Types.memoGeneration.incrementAndGet();
+            }
         }
     }
 
@@ -27,6 +27,7 @@ package com.sun.tools.javac.code;
 
 import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.tools.javac.util.*;
 import com.sun.tools.javac.util.List;
@@ -82,6 +83,11 @@ public class Types {
     List<Warner> warnStack = List.nil();
     final Name capturedName;
 
+    /** Memos for isSubtype, asSuper, memberType and erasure, or null
+     *  unless -XDmemoizeTypes was given.  See {@link Memo}.
+     */
+    final Memo subtypeMemo, asSuperMemo, memberTypeMemo, erasureMemo;
+
     // <editor-fold defaultstate="collapsed" desc="Instantiating">
     public static Types instance(Context context) {
         Types instance = context.get(typesKey);
@@ -102,6 +108,24 @@ public class Types {
         chk = Check.instance(context);
         capturedName = names.fromString("<captured wildcard>");
         messages = JavacMessages.instance(context);
+        Options options = Options.instance(context);
+        if (options.isSet("memoizeTypes")) {
+            int size = Memo.DEFAULT_SIZE;
+            String s = options.get("memoizeTypes");
+            if (!s.equals("memoizeTypes")) {
+                try {
+                    size = Integer.parseInt(s);
+                } catch (NumberFormatException e) {
+                    // keep the default size
+                }
+            }
+            subtypeMemo = new Memo("isSubtype", size);
+            asSuperMemo = new Memo("asSuper", size);
+            memberTypeMemo = new Memo("memberType", size);
+            erasureMemo = new Memo("erasure", size);
+        } else {
+            subtypeMemo = asSuperMemo = memberTypeMemo = erasureMemo = null;
+        }
     }
     // </editor-fold>
 
@@ -435,6 +459,21 @@ public class Types {
         if (t == s)
             return true;
 
+        // 只有不在containsTypeRecursive()的循环检测中时，结果才与调用上下文无关
+        if (subtypeMemo != null && subtypeDepth == 0 && memoizable(t) && memoizable(s)) {
+            Boolean c = capture ? Boolean.TRUE : Boolean.FALSE;
+            Object cached = subtypeMemo.get(t, s, c);
+            if (cached != null)
+                return cached == Boolean.TRUE;
+            int generation = memoGeneration.get();
+            boolean result = isSubtypeUncached(t, s, capture);
+            subtypeMemo.put(t, s, c, result ? Boolean.TRUE : Boolean.FALSE, generation);
+            return result;
+        }
+        return isSubtypeUncached(t, s, capture);
+    }
+    // where
+    private boolean isSubtypeUncached(Type t, Type s, boolean capture) {
         // 当s是UndetVar对象，所以tag值为TypeTags.UNDETVAR
         // 大于firstPartialTag的值，调用isSuperType()方法进行处理
         if (s.tag >= firstPartialTag)
@@ -499,11 +538,13 @@ public class Types {
             private boolean containsTypeRecursive(Type t, Type s) {
                 TypePair pair = new TypePair(t, s);
                 if (cache.add(pair)) {
+                    subtypeDepth++;
                     try {
                         // 调用containsType()方法判断t的类型参数是否包含s的类型参数
                         return containsType(t.getTypeArguments(),
                                             s.getTypeArguments());
                     } finally {
+                        subtypeDepth--;
                         cache.remove(pair);
                     }
                 } else {
@@ -1626,6 +1667,15 @@ public class Types {
     // 查找某个类型或某个类型的父类和实现接口
     // 传入符号或类型，查找父类型
     public Type asSuper(Type t, Symbol sym) {
+        if (asSuperMemo != null && memoizable(t)) {
+            Object cached = asSuperMemo.get(t, sym, null);
+            if (cached != null)
+                return (cached == Memo.NULL) ? null : (Type) cached;
+            int generation = memoGeneration.get();
+            Type result = asSuper.visit(t, sym);
+            asSuperMemo.put(t, sym, null, result, generation);
+            return result;
+        }
         return asSuper.visit(t, sym);
     }
     // where
@@ -1766,10 +1816,20 @@ public class Types {
     // 例c-13
     public Type memberType(Type t, Symbol sym) {
         // 当sym有static修饰时，返回sym.type，
-        return (sym.flags() & STATIC) != 0
-                // 因为有static修饰的成员的具体类型与t所代表的实例类型无关
-            ? sym.type
-            : memberType.visit(t, sym);
+        if ((sym.flags() & STATIC) != 0)
+            // 因为有static修饰的成员的具体类型与t所代表的实例类型无关
+            return sym.type;
+        // 复合类型的结果中含有每次新创建的捕获类型，不进行缓存
+        if (memberTypeMemo != null && !t.isCompound() && memoizable(t)) {
+            Object cached = memberTypeMemo.get(t, sym, sym.type);
+            if (cached != null)
+                return (cached == Memo.NULL) ? null : (Type) cached;
+            int generation = memoGeneration.get();
+            Type result = memberType.visit(t, sym);
+            memberTypeMemo.put(t, sym, sym.type, result, generation);
+            return result;
+        }
+        return memberType.visit(t, sym);
         }
     // where
         private SimpleVisitor<Type,Symbol> memberType = new SimpleVisitor<Type,Symbol>() {
@@ -1893,8 +1953,17 @@ public class Types {
     private Type erasure(Type t, boolean recurse) {
         if (t.tag <= lastBaseTag)
             return t; /* fast special case */
-        else
-            return erasure.visit(t, recurse);
+        // 类类型的擦除已经缓存在ClassSymbol.erasure_field中
+        if (erasureMemo != null && !recurse && t.tag != CLASS && memoizable(t)) {
+            Object cached = erasureMemo.get(t, null, null);
+            if (cached != null)
+                return (cached == Memo.NULL) ? null : (Type) cached;
+            int generation = memoGeneration.get();
+            Type result = erasure.visit(t, false);
+            erasureMemo.put(t, null, null, result, generation);
+            return result;
+        }
+        return erasure.visit(t, recurse);
         }
     // where
         private SimpleVisitor<Type, Boolean> erasure = new SimpleVisitor<Type, Boolean>() {
@@ -2195,6 +2264,7 @@ public class Types {
         else
             t.bound = makeCompoundType(bounds, supertype);
         t.rank_field = -1;
+        memoGeneration.incrementAndGet();
     }
 
     /**
@@ -2309,6 +2379,134 @@ public class Types {
             hasSameArgs(t, erasure(s)) || hasSameArgs(erasure(t), s);
     }
 
+    // <editor-fold defaultstate="collapsed" desc="Memoizing type relations">
+    /**
+     * Bumped whenever a symbol is completed or the bounds of a type variable
+     * are set, since either can change the supertypes, type parameters or
+     * bounds the memoized relations were computed from.  A memo entry is
+     * only valid while this is unchanged.  It is shared by all contexts,
+     * since Symbol.complete cannot reach the context of its symbol; a
+     * change made by another compilation merely empties the memos early.
+     * Compilations may run concurrently, so it is atomic: a lost update
+     * could make stale entries look valid again.
+     */
+    static final AtomicInteger memoGeneration = new AtomicInteger();
+
+    /** The depth of containsTypeRecursive() in isSubtype.  Results
+     *  computed below it depend on the pairs already being compared.
+     */
+    private int subtypeDepth;
+
+    /**
+     * Can relations involving t be memoized?  Only types that are not
+     * changed by inference or by capture conversion qualify, and a class
+     * type must already have its type parameters.
+     */
+    private boolean memoizable(Type t) {
+        switch (t.tag) {
+        case CLASS:
+            ClassType ct = (ClassType) t;
+            if (ct.typarams_field == null || t.isCompound())
+                return false;
+            for (List<Type> l = ct.typarams_field; l.nonEmpty(); l = l.tail) {
+                if (!memoizable(l.head))
+                    return false;
+            }
+            Type outer = ct.getEnclosingType();
+            return outer.tag != CLASS || memoizable(outer);
+        case ARRAY:
+            return memoizable(((ArrayType) t).elemtype);
+        case WILDCARD:
+            WildcardType w = (WildcardType) t;
+            return w.type == null || memoizable(w.type);
+        case TYPEVAR:
+            return !(t instanceof CapturedType) && ((TypeVar) t).bound != null;
+        case BOT:
+            return true;
+        default:
+            return t.tag <= lastBaseTag;
+        }
+    }
+
+    /**
+     * A fixed size, direct mapped memo of the results of a type relation,
+     * keyed on the identity of up to three objects.  A colliding entry
+     * simply replaces the older one, so the memo never grows.
+     */
+    static class Memo {
+        static final int DEFAULT_SIZE = 4096;
+
+        /** Stands for a null result. */
+        static final Object NULL = new Object();
+
+        final String name;
+        private final Object[] keys;
+        private final Object[] values;
+        private final int[] generations;
+        private final int mask;
+        long hits, misses;
+
+        Memo(String name, int size) {
+            int n = 16;
+            while (n < size && n < (1 << 20))
+                n <<= 1;
+            this.name = name;
+            keys = new Object[3 * n];
+            values = new Object[n];
+            generations = new int[n];
+            mask = n - 1;
+        }
+
+        private int index(Object a, Object b, Object c) {
+            int h = System.identityHashCode(a);
+            h = h * 31 + System.identityHashCode(b);
+            h = h * 31 + System.identityHashCode(c);
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /** The memoized result, {@link #NULL} for a null result, or
+         *  null if there is no valid entry.
+         */
+        Object get(Object a, Object b, Object c) {
+            int i = index(a, b, c);
+            if (values[i] != null && generations[i] == memoGeneration.get()
+                    && keys[3 * i] == a && keys[3 * i + 1] == b && keys[3 * i + 2] == c) {
+                hits++;
+                return values[i];
+            }
+            misses++;
+            return null;
+        }
+
+        /** Store a result computed from the state at the given generation. */
+        void put(Object a, Object b, Object c, Object value, int generation) {
+            if (generation != memoGeneration.get())
+                return;
+            int i = index(a, b, c);
+            keys[3 * i] = a;
+            keys[3 * i + 1] = b;
+            keys[3 * i + 2] = c;
+            values[i] = (value == null) ? NULL : value;
+            generations[i] = generation;
+        }
+    }
+
+    /**
+     * The hits and misses of the memos, keyed as in "isSubtype.hits",
+     * or an empty map unless -XDmemoizeTypes was given.
+     */
+    public Map<String, Long> getMemoStatistics() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        if (subtypeMemo != null) {
+            for (Memo memo : List.of(subtypeMemo, asSuperMemo, memberTypeMemo, erasureMemo)) {
+                m.put(memo.name + ".hits", memo.hits);
+                m.put(memo.name + ".misses", memo.misses);
+            }
+        }
+        return m;
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="Determining method implementation in given site">
     class ImplementationCache {
 
@@ -927,7 +927,7 @@ public class Flow extends TreeScanner {
             scanCond(tree.cond);
             if (log.nerrors !=  prevErrors ||
                 loopPassTwo ||
-                uninitsEntry.dup().diffSet(uninitsWhenTrue).nextBit(firstadr)==-1)
+                uninitsEntry.nextBitNotIn(uninitsWhenTrue, firstadr)==-1)
                 break;
             inits = initsWhenTrue;
             uninits = uninitsEntry.andSet(uninitsWhenTrue);
@@ -961,7 +961,7 @@ public class Flow extends TreeScanner {
             alive |= resolveContinues(tree);
             if (log.nerrors != prevErrors ||
                 loopPassTwo ||
-                uninitsEntry.dup().diffSet(uninits).nextBit(firstadr) == -1)
+                uninitsEntry.nextBitNotIn(uninits, firstadr) == -1)
                 break;
             uninits = uninitsEntry.andSet(uninits);
             loopPassTwo = true;
@@ -1033,10 +1033,10 @@ public class Flow extends TreeScanner {
             if (log.nerrors != prevErrors ||
                 loopPassTwo ||
                     // 如果要分析的for语句没有操作final变量
-                    // uninitsEntry.dup().diffSet(uninits).nextBit(firstadr) == -1 返回TRUE
+                    // uninitsEntry.nextBitNotIn(uninits, firstadr) == -1 返回TRUE
                     // 例14-13/14-14
                     // 没有final变量，就跳出do-while循环
-                uninitsEntry.dup().diffSet(uninits).nextBit(firstadr) == -1)
+                uninitsEntry.nextBitNotIn(uninits, firstadr) == -1)
                 break;
             // 有final变量，最终会与unints取交集
             uninits = uninitsEntry.andSet(uninits);
@@ -1075,7 +1075,7 @@ public class Flow extends TreeScanner {
             alive |= resolveContinues(tree);
             if (log.nerrors != prevErrors ||
                 loopPassTwo ||
-                uninitsEntry.dup().diffSet(uninits).nextBit(firstadr) == -1)
+                uninitsEntry.nextBitNotIn(uninits, firstadr) == -1)
                 break;
             uninits = uninitsEntry.andSet(uninits);
             loopPassTwo = true;
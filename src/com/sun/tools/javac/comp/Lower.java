@@ -269,7 +269,7 @@ public class Lower extends TreeTranslator {
             Symbol sym = _sym;
             if (sym.kind == VAR || sym.kind == MTH) {
                 while (sym != null && sym.owner != owner)
-                    sym = proxies.lookup(proxyName(sym.name)).sym;
+                    sym = proxies.lookup(proxyName(sym.name));
                 if (sym != null && sym.owner == owner) {
                     VarSymbol v = (VarSymbol)sym;
                     // 调用v.getConstValue()方法的返回值不为空，所以不是自由变量
@@ -649,7 +649,7 @@ public class Lower extends TreeTranslator {
      * @param s scope in which the name has to be unique
      * @return fresh synthetic name
      */
-    private Name makeSyntheticName(Name name, Scope s) {
+    private Name makeSyntheticName(Name name, CompactScope s) {
         do {
             name = name.append(
                     target.syntheticNameChar(),
@@ -709,6 +709,11 @@ public class Lower extends TreeTranslator {
         return (sym==null || (sym.flags()&SYNTHETIC)==0) ? null : sym;
     }
 
+    private Symbol lookupSynthetic(Name name, CompactScope s) {
+        Symbol sym = s.lookup(name);
+        return (sym==null || (sym.flags()&SYNTHETIC)==0) ? null : sym;
+    }
+
     /** Look up a method in a given scope.
      */
     private MethodSymbol lookupMethod(DiagnosticPosition pos, Name name, Type qual, List<Type> args) {
@@ -1139,7 +1144,7 @@ public class Lower extends TreeTranslator {
                 return makeLit(sym.type, cv);
             }
             // 引用的自由变量更新为引用自由变量对应合成的成员变量，所以从proxies中查找
-            sym = proxies.lookup(proxyName(sym.name)).sym;
+            sym = proxies.lookup(proxyName(sym.name));
             Assert.check(sym != null && (sym.flags_field & FINAL) != 0);
             tree = make.at(tree.pos).Ident(sym);
         }
@@ -1436,12 +1441,12 @@ public class Lower extends TreeTranslator {
      *  in an additional innermost scope, where they represent the constructor
      *  parameters.
      */
-    Scope proxies;
+    CompactScope proxies;
 
     /** A scope containing all unnamed resource variables/saved
      *  exception variables for translated TWR blocks
      */
-    Scope twrVars;
+    CompactScope twrVars;
 
     /** A stack containing the this$n field of the currently translated
      *  classes (if needed) in innermost first order.
@@ -1848,14 +1853,14 @@ public class Lower extends TreeTranslator {
      */
     // 返回树模拟赋值 <this.name = name>，其中 name 是自由变量的名称。
     JCStatement initField(int pos, Name name) {
-        // 对于合成的名称name，从proxies中查找对应的Scope.Entry对象
-        Scope.Entry e = proxies.lookup(name);
-        Symbol rhs = e.sym;
+        // 对于合成的名称name，从proxies中按填充的逆序取出同名的符号
+        Iterator<Symbol> it = proxies.getElementsByName(name).iterator();
+        Symbol rhs = it.next();
         Assert.check(rhs.owner.kind == MTH);
-        // 在获取lhs的值时，需要调用e.next()方法获取Scope.Entry对象的shadowed变量的值，
+        // 在获取lhs的值时，需要取第二个同名的符号，
         // 因为两个符号的名称相同，并且合成的成员变量一定会先填充到proxies中，
-        // 而合成的构造方法中的形式参数后填充到proxies中，所以后填充的同名符号在前，通过shadowed指向先添加的符号
-        Symbol lhs = e.next().sym;
+        // 而合成的构造方法中的形式参数后填充到proxies中，所以后填充的同名符号在前，被它遮蔽的是先添加的符号
+        Symbol lhs = it.next();
         Assert.check(rhs.owner.owner == lhs.owner);
         make.at(pos);
         return
@@ -3862,8 +3867,8 @@ public class Lower extends TreeTranslator {
             classdefs = new HashMap<ClassSymbol,JCClassDecl>();
             actualSymbols = new HashMap<Symbol,Symbol>();
             freevarCache = new HashMap<ClassSymbol,List<VarSymbol>>();
-            proxies = new Scope(syms.noSymbol);
-            twrVars = new Scope(syms.noSymbol);
+            proxies = new CompactScope(syms.noSymbol);
+            twrVars = new CompactScope(syms.noSymbol);
             outerThisStack = List.nil();
             accessNums = new HashMap<Symbol,Integer>();
             accessSyms = new HashMap<Symbol,MethodSymbol[]>();
@@ -43,9 +43,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipFile;
 
 import javax.lang.model.SourceVersion;
@@ -61,6 +67,7 @@ import com.sun.tools.javac.util.BaseFileManager;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.List;
 import com.sun.tools.javac.util.ListBuffer;
+import com.sun.tools.javac.util.WorkerThreads;
 
 import static javax.tools.StandardLocation.*;
 import static com.sun.tools.javac.main.OptionName.*;
@@ -105,6 +112,11 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      */
     private File classOutDir = uninited;
 
+    /** The archive that class output is written to, if the standard output
+     *  directory is a jar or zip file; see OutputArchive.
+     */
+    private OutputArchive outputArchive;
+
     /** The output directory, used when generating sources while processing annotations.
      *  Initialized by the "-s" option.
      */
@@ -113,6 +125,48 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     protected boolean mmappedIO;
     protected boolean ignoreSymbolFile;
 
+    /** Whether list() uses a PackageIndex of each location, as set by
+     *  -XDpackageIndex.
+     */
+    protected boolean usePackageIndex;
+    private final Map<Location, PackageIndex> packageIndexes =
+        new HashMap<Location, PackageIndex>();
+
+    /** The locations whose archives have been opened by openArchives().
+     */
+    private final Set<Location> openedLocations = new HashSet<Location>();
+
+    /** Whether class files read from archives are kept in the shared
+     *  archive index, so that other compilations in the same VM can use
+     *  them without reading and inflating them again.
+     */
+    protected boolean shareClassFiles;
+
+    /** Entries and (uncompressed) bytes read from zip file indexes through
+     *  this file manager, for -XDstats.
+     */
+    private final AtomicLong zipEntriesRead = new AtomicLong();
+    private final AtomicLong zipBytesRead = new AtomicLong();
+
+    /** Count an entry read from a zip file index.
+     */
+    void countZipRead(long size) {
+        zipEntriesRead.incrementAndGet();
+        zipBytesRead.addAndGet(size);
+    }
+
+    /** The number of entries read from zip file indexes so far.
+     */
+    public long getZipEntriesRead() {
+        return zipEntriesRead.get();
+    }
+
+    /** The number of (uncompressed) bytes read from zip file indexes so far.
+     */
+    public long getZipBytesRead() {
+        return zipBytesRead.get();
+    }
+
     protected enum SortFiles implements Comparator<File> {
         FORWARD {
             public int compare(File f1, File f2) {
@@ -170,7 +224,9 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             zipFileIndexCache = ZipFileIndexCache.getSharedInstance();
 
         mmappedIO = options.isSet("mmappedIO");
+        usePackageIndex = options.isSet("packageIndex");
         ignoreSymbolFile = options.isSet("ignore.symbol.file");
+        shareClassFiles = options.isSet("shareClassFiles");
 
         String sf = options.get("sortFiles");
         if (sf != null) {
@@ -392,6 +448,222 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                     resultList);
     }
 
+    /**
+     * An index of the packages in the containers of a search path, used by
+     * list() when -XDpackageIndex is given. It is built the first time a
+     * location is listed: the directories of the archives on the path are
+     * read concurrently, and kept by package, so that listing a package
+     * only looks in the archives that have it, rather than in all of them.
+     * The files in a package directory are kept when the package is first
+     * listed, and are listed again only when the modification time of the
+     * directory changes. Results are in the same order as those of
+     * listContainer().
+     */
+    private class PackageIndex {
+        /** For each package, the archives that have it, in path order.
+         */
+        private final Map<RelativeDirectory, ArrayList<ArchivePosition>> packageArchives =
+            new HashMap<RelativeDirectory, ArrayList<ArchivePosition>>();
+
+        /** The directories on the path, with their positions in it.
+         */
+        private final File[] directories;
+        private final int[] directoryPositions;
+
+        /** For each directory, the package directories listed so far.
+         */
+        private final ArrayList<Map<RelativeDirectory, DirectoryFiles>> directoryFiles;
+
+        PackageIndex(Iterable<? extends File> path) {
+            ListBuffer<File> dirs = new ListBuffer<File>();
+            ListBuffer<Integer> dirPositions = new ListBuffer<Integer>();
+            final ArrayList<Archive> archs = new ArrayList<Archive>();
+            ArrayList<Integer> archPositions = new ArrayList<Integer>();
+            int pos = 0;
+            for (File container : path) {
+                Archive archive = archives.get(container);
+                if (archive == null && fsInfo.isDirectory(container)) {
+                    dirs.append(container);
+                    dirPositions.append(pos);
+                } else {
+                    try {
+                        if (archive == null)
+                            archive = openArchive(container);
+                        archs.add(archive);
+                        archPositions.add(pos);
+                    } catch (IOException ex) {
+                        log.error("error.reading.file", container, getMessage(ex));
+                    }
+                }
+                pos++;
+            }
+
+            directories = dirs.toArray(new File[dirs.size()]);
+            directoryPositions = new int[directories.length];
+            directoryFiles = new ArrayList<Map<RelativeDirectory, DirectoryFiles>>(directories.length);
+            for (int i = 0; i < directories.length; i++) {
+                directoryPositions[i] = dirPositions.next();
+                directoryFiles.add(new HashMap<RelativeDirectory, DirectoryFiles>());
+            }
+
+            // Reading the directory of an archive is most of the work, and
+            // archives can be read independently of each other.
+            int nthreads = paths.scanThreads();
+            if (nthreads == 0)
+                nthreads = WorkerThreads.defaultCount();
+            ArrayList<Set<RelativeDirectory>> contents = readDirectories(archs, nthreads);
+
+            for (int i = 0; i < archs.size(); i++) {
+                ArchivePosition ap = new ArchivePosition(archPositions.get(i), archs.get(i));
+                for (RelativeDirectory s : contents.get(i)) {
+                    ArrayList<ArchivePosition> l = packageArchives.get(s);
+                    if (l == null) {
+                        l = new ArrayList<ArchivePosition>(2);
+                        packageArchives.put(s, l);
+                    }
+                    l.add(ap);
+                }
+            }
+        }
+
+        void list(RelativeDirectory subdirectory,
+                  Set<JavaFileObject.Kind> fileKinds,
+                  ListBuffer<JavaFileObject> resultList) {
+            ArrayList<ArchivePosition> hits = packageArchives.get(subdirectory);
+            int nhits = (hits == null ? 0 : hits.size());
+            int h = 0;
+            for (int i = 0; i < directories.length; i++) {
+                for (; h < nhits && hits.get(h).position < directoryPositions[i]; h++)
+                    listArchive(hits.get(h).archive, subdirectory, fileKinds, false, resultList);
+                listDirectory(i, subdirectory, fileKinds, resultList);
+            }
+            for (; h < nhits; h++)
+                listArchive(hits.get(h).archive, subdirectory, fileKinds, false, resultList);
+        }
+
+        private void listDirectory(int i,
+                                   RelativeDirectory subdirectory,
+                                   Set<JavaFileObject.Kind> fileKinds,
+                                   ListBuffer<JavaFileObject> resultList) {
+            Map<RelativeDirectory, DirectoryFiles> listed = directoryFiles.get(i);
+            DirectoryFiles df = listed.get(subdirectory);
+            File d = (df != null ? df.dir : subdirectory.getFile(directories[i]));
+            long lastModified = d.lastModified(); // 0 if there is no such directory
+            if (df == null || df.lastModified != lastModified) {
+                df = new DirectoryFiles(d, lastModified, subdirectory);
+                listed.put(subdirectory, df);
+            }
+            for (String fname : df.files) {
+                if (isValidFile(fname, fileKinds))
+                    resultList.append(new RegularFileObject(JavacFileManager.this, fname, new File(d, fname)));
+            }
+        }
+    }
+
+    /** An archive on an indexed path, and its position in the path.
+     */
+    private static class ArchivePosition {
+        final int position;
+        final Archive archive;
+
+        ArchivePosition(int position, Archive archive) {
+            this.position = position;
+            this.archive = archive;
+        }
+    }
+
+    /** The files, but not the subdirectories, of a package directory on an
+     *  indexed path, as of a given modification time of the directory.
+     */
+    private class DirectoryFiles {
+        final File dir;
+        final long lastModified;
+        final String[] files;
+
+        DirectoryFiles(File dir, long lastModified, RelativeDirectory subdirectory) {
+            this.dir = dir;
+            this.lastModified = lastModified;
+            File[] fs = caseMapCheck(dir, subdirectory) ? dir.listFiles() : null;
+            if (fs == null) {
+                files = new String[0];
+                return;
+            }
+            if (sortFiles != null)
+                Arrays.sort(fs, sortFiles);
+            ListBuffer<String> names = new ListBuffer<String>();
+            for (File f : fs) {
+                if (!f.isDirectory())
+                    names.append(f.getName());
+            }
+            files = names.toArray(new String[names.size()]);
+        }
+    }
+
+    /**
+     * Read the directories of the given archives, on up to nthreads threads.
+     * @return the subdirectories of each archive, in the same order
+     */
+    private ArrayList<Set<RelativeDirectory>> readDirectories(ArrayList<Archive> archs,
+                                                              int nthreads) {
+        ArrayList<Set<RelativeDirectory>> contents =
+            new ArrayList<Set<RelativeDirectory>>(archs.size());
+        nthreads = Math.min(archs.size(), nthreads);
+        if (nthreads <= 1) {
+            for (Archive a : archs)
+                contents.add(a.getSubdirectories());
+            return contents;
+        }
+        ExecutorService readers = WorkerThreads.newPool(nthreads, "archives");
+        try {
+            ArrayList<Future<Set<RelativeDirectory>>> futures =
+                new ArrayList<Future<Set<RelativeDirectory>>>(archs.size());
+            for (final Archive a : archs) {
+                futures.add(readers.submit(new Callable<Set<RelativeDirectory>>() {
+                    public Set<RelativeDirectory> call() {
+                        return a.getSubdirectories();
+                    }
+                }));
+            }
+            for (Future<Set<RelativeDirectory>> f : futures)
+                contents.add(f.get());
+            return contents;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Open the archives on a path and read their directories concurrently,
+     * as set by -XDparallelPaths, before the path is first listed one
+     * container after another. Archives that cannot be opened are left
+     * for listContainer() to report.
+     */
+    private void openArchives(Iterable<? extends File> path) {
+        ArrayList<Archive> archs = new ArrayList<Archive>();
+        for (File container : path) {
+            Archive archive = archives.get(container);
+            if (archive == null && !fsInfo.isDirectory(container)) {
+                try {
+                    archive = openArchive(container);
+                } catch (IOException ex) {
+                    continue;
+                }
+            }
+            if (archive != null)
+                archs.add(archive);
+        }
+        readDirectories(archs, paths.scanThreads());
+    }
+
     private boolean isValidFile(String s, Set<JavaFileObject.Kind> fileKinds) {
         JavaFileObject.Kind kind = getKind(s);
         return fileKinds.contains(kind);
@@ -578,7 +850,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     null,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             } else {
                 if (!useOptimizedZip) {
@@ -589,7 +862,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     symbolFilePrefix,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             }
         } catch (FileNotFoundException ex) {
@@ -608,14 +882,34 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
     /** Flush any output resources.
      */
-    public void flush() {
+    public void flush() throws IOException {
         contentCache.clear();
+        if (outputArchive != null)
+            outputArchive.flush();
+    }
+
+    /** Finish the class output archive, if any, so that it is a complete
+     *  zip file. This is done at the end of each compilation; a later
+     *  compilation using this file manager writes a new archive.
+     */
+    public void finishOutputArchive() {
+        if (outputArchive != null) {
+            try {
+                outputArchive.close();
+            } catch (IOException e) {
+                log.error("class.cant.write", outputArchive.file, getMessage(e));
+            }
+            outputArchive = null;
+        }
     }
 
     /**
      * Close the JavaFileManager, releasing resources.
      */
     public void close() {
+        finishOutputArchive();
+        packageIndexes.clear();
+        openedLocations.clear();
         for (Iterator<Archive> i = archives.values().iterator(); i.hasNext(); ) {
             Archive a = i.next();
             i.remove();
@@ -673,6 +967,19 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         RelativeDirectory subdirectory = RelativeDirectory.forPackage(packageName);
         ListBuffer<JavaFileObject> results = new ListBuffer<JavaFileObject>();
 
+        if (paths.scanThreads() > 1 && openedLocations.add(location))
+            openArchives(path);
+
+        if (usePackageIndex && !recurse) {
+            PackageIndex index = packageIndexes.get(location);
+            if (index == null) {
+                index = new PackageIndex(path);
+                packageIndexes.put(location, index);
+            }
+            index.list(subdirectory, kinds, results);
+            return results.toList();
+        }
+
         for (File directory : path)
             listContainer(directory, subdirectory, kinds, recurse, results);
         return results.toList();
@@ -801,7 +1108,9 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     {
         File dir;
         if (location == CLASS_OUTPUT) {
-            if (getClassOutDir() != null) {
+            if (getOutputArchive() != null) {
+                return getOutputArchive().getFileForOutput(fileName);
+            } else if (getClassOutDir() != null) {
                 dir = getClassOutDir();
             } else {
                 File siblingDir = null;
@@ -811,6 +1120,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 return new RegularFileObject(this, new File(siblingDir, fileName.basename()));
             }
         } else if (location == SOURCE_OUTPUT) {
+            if (getSourceOutDir() == null && getOutputArchive() != null)
+                return getOutputArchive().getFileForOutput(fileName);
             dir = (getSourceOutDir() != null ? getSourceOutDir() : getClassOutDir());
         } else {
             Iterable<? extends File> path = paths.getPathForLocation(location);
@@ -850,18 +1161,27 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     {
         nullCheck(location);
         paths.lazy();
+        packageIndexes.remove(location);
+        openedLocations.remove(location);
 
-        final File dir = location.isOutputLocation() ? getOutputDirectory(path) : null;
+        final File dir = location.isOutputLocation()
+            ? getOutputDirectory(path, location == CLASS_OUTPUT) : null;
 
-        if (location == CLASS_OUTPUT)
+        if (location == CLASS_OUTPUT) {
+            if (outputArchive != null) {
+                outputArchive.close();
+                outputArchive = null;
+            }
             classOutDir = getOutputLocation(dir, D);
+        }
         else if (location == SOURCE_OUTPUT)
             sourceOutDir = getOutputLocation(dir, S);
         else
             paths.setPathForLocation(location, path);
     }
     // where
-        private File getOutputDirectory(Iterable<? extends File> path) throws IOException {
+        private File getOutputDirectory(Iterable<? extends File> path, boolean allowArchive)
+                throws IOException {
             if (path == null)
                 return null;
             Iterator<? extends File> pathIter = path.iterator();
@@ -870,6 +1190,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             File dir = pathIter.next();
             if (pathIter.hasNext())
                 throw new IllegalArgumentException("path too long for directory");
+            if (allowArchive && OutputArchive.isArchiveName(dir))
+                return dir;
             if (!dir.exists())
                 throw new FileNotFoundException(dir + ": does not exist");
             else if (!dir.isDirectory())
@@ -907,6 +1229,13 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return classOutDir;
     }
 
+    private OutputArchive getOutputArchive() {
+        File dir = getClassOutDir();
+        if (outputArchive == null && dir != null && OutputArchive.isArchiveName(dir))
+            outputArchive = new OutputArchive(this, dir);
+        return outputArchive;
+    }
+
     private File getSourceOutDir() {
         if (sourceOutDir == uninited)
             sourceOutDir = getOutputLocation(null, S);
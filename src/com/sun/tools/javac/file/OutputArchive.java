@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaFileObject;
+
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+
+/**
+ * A jar or zip file used as the class output location, as given by
+ * "-d foo.jar".
+ *
+ * <p>Files for output are numbered in the order they are requested, and
+ * their contents are written to the archive in that order, as stored
+ * entries with a fixed timestamp, so that the same compilation always
+ * produces the same archive. A file that is complete before an earlier
+ * one is kept in memory until the earlier one is written. The archive is
+ * only created once there is something to write, and it is completed
+ * when the file manager is closed.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class OutputArchive {
+
+    /** The time of every entry: the earliest time a zip file can record.
+     */
+    private static final long ENTRY_TIME =
+        new GregorianCalendar(1980, GregorianCalendar.JANUARY, 1).getTimeInMillis();
+
+    /** Is this the name of a file to be used as an output archive, rather
+     *  than as an output directory?
+     */
+    public static boolean isArchiveName(File file) {
+        String n = file.getName().toLowerCase();
+        return (n.endsWith(".jar") || n.endsWith(".zip"))
+            && !file.isDirectory();
+    }
+
+    final JavacFileManager fileManager;
+    final File file;
+
+    private ZipOutputStream out;
+
+    /** The number to be given to the next file requested.
+     */
+    private int requested;
+
+    /** The number of the next file to be written.
+     */
+    private int written;
+
+    /** The files that are complete but not yet written, by number.
+     *  A file that will not be written maps to null.
+     */
+    private final Map<Integer, OutputFileObject> pending = new HashMap<Integer, OutputFileObject>();
+
+    /** The files requested and not yet written or dropped, by entry name.
+     */
+    private final Map<String, OutputFileObject> open = new HashMap<String, OutputFileObject>();
+
+    /** The names of the entries in the archive, files and directories.
+     */
+    private final Set<String> entries = new HashSet<String>();
+
+    private final CRC32 crc = new CRC32();
+
+    OutputArchive(JavacFileManager fileManager, File file) {
+        this.fileManager = fileManager;
+        this.file = file;
+    }
+
+    /** Get a file for output in this archive. A file requested again
+     *  before the first one is written replaces it.
+     */
+    synchronized JavaFileObject getFileForOutput(RelativeFile name) throws IOException {
+        String entryName = name.getPath();
+        if (entries.contains(entryName))
+            throw new IOException(file + ": " + entryName + " has already been written");
+        OutputFileObject prev = open.get(entryName);
+        if (prev != null)
+            complete(prev, null);
+        OutputFileObject fo = new OutputFileObject(this, entryName, requested++);
+        open.put(entryName, fo);
+        return fo;
+    }
+
+    /** Record the contents of a file, or null if it will not be written,
+     *  and write all files that are now ready.
+     */
+    private synchronized void complete(OutputFileObject fo, byte[] content) throws IOException {
+        if (fo.index < written || pending.containsKey(fo.index))
+            return;
+        if (open.get(fo.entryName) == fo)
+            open.remove(fo.entryName);
+        fo.pendingContent = content;
+        pending.put(fo.index, content == null ? null : fo);
+        drain();
+    }
+
+    private void drain() throws IOException {
+        while (pending.containsKey(written)) {
+            OutputFileObject fo = pending.remove(written);
+            if (fo != null)
+                write(fo);
+            written++;
+        }
+    }
+
+    private void write(OutputFileObject fo) throws IOException {
+        byte[] content = fo.pendingContent;
+        fo.pendingContent = null;
+        if (out == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.isDirectory())
+                throw new IOException("could not create parent directories");
+            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+        putDirectories(fo.entryName);
+        ZipEntry e = new ZipEntry(fo.entryName);
+        crc.reset();
+        crc.update(content, 0, content.length);
+        store(e, content.length, crc.getValue());
+        out.putNextEntry(e);
+        out.write(content);
+        out.closeEntry();
+        entries.add(fo.entryName);
+    }
+    // where
+        private void putDirectories(String entryName) throws IOException {
+            int sep = entryName.lastIndexOf('/');
+            if (sep <= 0)
+                return;
+            String dir = entryName.substring(0, sep + 1);
+            if (entries.contains(dir))
+                return;
+            putDirectories(dir.substring(0, sep));
+            ZipEntry e = new ZipEntry(dir);
+            store(e, 0, 0);
+            out.putNextEntry(e);
+            out.closeEntry();
+            entries.add(dir);
+        }
+
+        private void store(ZipEntry e, long size, long crc) {
+            e.setMethod(ZipEntry.STORED);
+            e.setSize(size);
+            e.setCompressedSize(size);
+            e.setCrc(crc);
+            e.setTime(ENTRY_TIME);
+        }
+
+    /** Write the files that are ready, and flush the archive.
+     */
+    synchronized void flush() throws IOException {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+
+    /** Write all files that are complete, skipping any that never were,
+     *  and complete the archive.
+     */
+    synchronized void close() throws IOException {
+        for (; written < requested; written++) {
+            OutputFileObject fo = pending.remove(written);
+            if (fo != null)
+                write(fo);
+        }
+        open.clear();
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * A file to be written to an output archive. Its contents are kept in
+     * memory until the file is closed, and after that only if it is not a
+     * class file, so that a generated source file can be read back.
+     */
+    static class OutputFileObject extends BaseFileObject {
+
+        final OutputArchive archive;
+        final String entryName;
+        final int index;
+        private byte[] content;
+        private byte[] pendingContent;
+
+        OutputFileObject(OutputArchive archive, String entryName, int index) {
+            super(archive.fileManager);
+            this.archive = archive;
+            this.entryName = entryName;
+            this.index = index;
+        }
+
+        @Override
+        public URI toUri() {
+            return createJarUri(archive.file, entryName);
+        }
+
+        @Override
+        public String getName() {
+            return archive.file + "(" + entryName + ")";
+        }
+
+        @Override
+        public String getShortName() {
+            return archive.file.getName() + "(" + entryName + ")";
+        }
+
+        @Override
+        public JavaFileObject.Kind getKind() {
+            return getKind(entryName);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            if (content == null)
+                throw new UnsupportedOperationException();
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public OutputStream openOutputStream() throws IOException {
+            return new ByteArrayOutputStream() {
+                private boolean closed;
+                @Override
+                public void close() throws IOException {
+                    if (closed)
+                        return;
+                    closed = true;
+                    byte[] bytes = toByteArray();
+                    if (getKind() != JavaFileObject.Kind.CLASS)
+                        content = bytes;
+                    archive.complete(OutputFileObject.this, bytes);
+                }
+            };
+        }
+
+        @Override
+        public CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            CharBuffer cb = fileManager.getCachedContent(this);
+            if (cb == null) {
+                ByteBuffer bb = fileManager.makeByteBuffer(openInputStream());
+                JavaFileObject prev = fileManager.log.useSource(this);
+                try {
+                    cb = fileManager.decode(bb, ignoreEncodingErrors);
+                } finally {
+                    fileManager.log.useSource(prev);
+                }
+                fileManager.recycleByteBuffer(bb);
+                if (!ignoreEncodingErrors) {
+                    fileManager.cache(this, cb);
+                }
+            }
+            return cb;
+        }
+
+        @Override
+        public Writer openWriter() throws IOException {
+            return new OutputStreamWriter(openOutputStream(), fileManager.getEncodingName());
+        }
+
+        @Override
+        public long getLastModified() {
+            return ENTRY_TIME;
+        }
+
+        @Override
+        public boolean delete() {
+            try {
+                archive.complete(this, null);
+            } catch (IOException e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        protected CharsetDecoder getDecoder(boolean ignoreEncodingErrors) {
+            return fileManager.getDecoder(fileManager.getEncodingName(), ignoreEncodingErrors);
+        }
+
+        @Override
+        protected String inferBinaryName(Iterable<? extends File> path) {
+            return removeExtension(entryName).replace('/', '.');
+        }
+
+        @Override
+        public boolean isNameCompatible(String cn, JavaFileObject.Kind k) {
+            cn.getClass();
+            // null check
+            if (k == Kind.OTHER && getKind() != k) {
+                return false;
+            }
+            String n = entryName.substring(entryName.lastIndexOf('/') + 1);
+            return n.equals(cn + k.extension);
+        }
+
+        /**
+         * Check if two file objects are equal.
+         * Two OutputFileObjects are equal if they are the same entry of
+         * the same archive.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+
+            if (!(other instanceof OutputFileObject))
+                return false;
+
+            OutputFileObject o = (OutputFileObject) other;
+            return archive.file.getAbsoluteFile().equals(o.archive.file.getAbsoluteFile())
+                    && entryName.equals(o.entryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return archive.file.getAbsoluteFile().hashCode() + entryName.hashCode();
+        }
+    }
+}
@@ -37,6 +37,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipFile;
 import javax.tools.JavaFileManager.Location;
 
@@ -45,6 +50,7 @@ import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.Options;
+import com.sun.tools.javac.util.WorkerThreads;
 
 import static javax.tools.StandardLocation.*;
 import static com.sun.tools.javac.main.OptionName.*;
@@ -99,6 +105,18 @@ public class Paths {
         options = Options.instance(context);
         lint = Lint.instance(context);
         fsInfo = FSInfo.instance(context);
+        scanThreads = options.isSet("parallelPaths")
+            ? WorkerThreads.count(options, "parallelPaths") : 0;
+    }
+
+    /** The number of threads used to look at the elements of a path, as
+     *  set by -XDparallelPaths or -XDparallelPaths=n, or 0 if the elements
+     *  are looked at one after another.
+     */
+    private int scanThreads;
+
+    int scanThreads() {
+        return scanThreads;
     }
 
     /** Whether to warn about non-existent path elements */
@@ -278,6 +296,7 @@ public class Paths {
             if (files == null)
                 return;
 
+            prefetch(java.util.Arrays.asList(files), expandJarClassPaths);
             for (File direntry : files) {
                 if (isArchive(direntry))
                     addFile(direntry, warn);
@@ -286,7 +305,9 @@ public class Paths {
 
         public Path addFiles(String files, boolean warn) {
             if (files != null) {
-                for (File file : getPathEntries(files, emptyPathDefault))
+                Iterable<File> entries = getPathEntries(files, emptyPathDefault);
+                prefetch(entries, expandJarClassPaths);
+                for (File file : entries)
                     addFile(file, warn);
             }
             return this;
@@ -365,6 +386,68 @@ public class Paths {
         }
     }
 
+    /**
+     * Look at the given path elements on scanThreads threads, and at the
+     * elements named by the Class-Path manifest attributes of those that
+     * are jar files if expandJarClassPaths is set, before they are added
+     * to a path. Looking at them fills the cache of a CacheFSInfo, so
+     * that the elements can then be added one after another, in order,
+     * without waiting for the file system. Nothing is done unless the file
+     * information is cached, and errors are left to be reported when the
+     * elements are added.
+     */
+    private void prefetch(Iterable<File> files, final boolean expandJarClassPaths) {
+        if (scanThreads <= 1 || !(fsInfo instanceof CacheFSInfo))
+            return;
+        ExecutorService scanners = WorkerThreads.newPool(scanThreads, "paths");
+        try {
+            CompletionService<Iterable<File>> done =
+                new ExecutorCompletionService<Iterable<File>>(scanners);
+            Set<File> seen = new HashSet<File>();
+            int pending = 0;
+            for (File f : files) {
+                if (seen.add(f)) {
+                    done.submit(prefetchTask(f, expandJarClassPaths));
+                    pending++;
+                }
+            }
+            while (pending > 0) {
+                Iterable<File> more;
+                try {
+                    more = done.take().get();
+                } catch (ExecutionException e) {
+                    // the error is found again when the element is added
+                    more = Collections.<File>emptyList();
+                }
+                pending--;
+                for (File f : more) {
+                    if (seen.add(f)) {
+                        done.submit(prefetchTask(f, expandJarClassPaths));
+                        pending++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scanners.shutdownNow();
+        }
+    }
+    // where
+        private Callable<Iterable<File>> prefetchTask(final File file,
+                                                      final boolean expandJarClassPaths) {
+            return new Callable<Iterable<File>>() {
+                public Iterable<File> call() throws IOException {
+                    if (!fsInfo.exists(file))
+                        return Collections.<File>emptyList();
+                    fsInfo.getCanonicalFile(file);
+                    if (expandJarClassPaths && fsInfo.isFile(file))
+                        return fsInfo.getJarClassPath(file);
+                    return Collections.<File>emptyList();
+                }
+            };
+        }
+
     // PLATOFRM_CLASS_PATH代表的搜索路径通过调用computeBootClassPath()方法得到
     // 如果没有指定-endorseddirs命令，则获取系统属性java.endorsed.dirs所指定的目录路径；
     // 如果没有指定-bootclasspath命令，则获取系统属性sun.boot.class.path所指定的目录路径；
@@ -29,13 +29,20 @@ package com.sun.tools.javac.file;
 import com.sun.tools.javac.file.RelativePath.RelativeDirectory;
 import com.sun.tools.javac.file.RelativePath.RelativeFile;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
@@ -59,9 +66,24 @@ import java.util.zip.ZipException;
  * file created for each archive, used by the compiler for compilation, at the
  * location specified by the "cachezipindexdir" option.
  * <p>
+ * Index files have a versioned binary format that is memory mapped when read,
+ * so that an archive with a current index file is used without reading its
+ * central directory. The entries of a directory are decoded from the index
+ * file when the directory is first used. Index files are checked against the
+ * length, timestamp and end of central directory record of the archive, and
+ * stale or long unused index files are evicted from the cache directory.
+ * <p>
  * If system property nonBatchMode option is specified the compiler will use
  * timestamp checking to reindex the zip files if it is needed. In batch mode
  * the timestamps are not checked and the compiler uses the cached indexes.
+ * <p>
+ * If the "mmappedIO" option is set ("-XDmmappedIO"), the archive is memory
+ * mapped once its index has been built. The fully initialized index is then
+ * published, and lookups and reads go through the published index and the
+ * mapped archive without locking, so that several threads can read the same
+ * archive concurrently. Stored entries are read as slices of the mapped
+ * archive; compressed entries are inflated with a per-thread Inflater.
+ * In non-batch mode lookups still lock the index to check its timestamp.
  *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own risk.
@@ -92,6 +114,11 @@ public class ZipFileIndex {
     private Entry[] entries;
     private boolean readFromIndex = false;
     private File zipIndexFile = null;
+    private ByteBuffer zipIndexBuffer;
+    private int indexEntriesOffset;
+    private long zipFileLength = -1;
+    private long endRecordPosition = -1;
+    private long zipContentHash;
     private boolean triedToReadIndex = false;
     private boolean hasPopulatedData = false;
     private boolean writeIndex = false;
@@ -103,9 +130,28 @@ public class ZipFileIndex {
      */
     private SoftReference<Inflater> inflaterRef;
 
+    /*
+     * Memory mapped reading, see the class comment
+     */
+    private final boolean useMappedIO;
+    private volatile ByteBuffer mappedZip;
+    private volatile Map<RelativeDirectory, DirectoryEntry> publishedDirectories;
+    private static final ThreadLocal<Inflater> mappedInflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
     ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
                  boolean useCache, String cacheLocation) throws IOException {
+        this(zipFile, symbolFilePrefix, writeIndex, useCache, cacheLocation, false);
+    }
+
+    ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
+                 boolean useCache, String cacheLocation, boolean useMappedIO) throws IOException {
         this.zipFile = zipFile;
+        this.useMappedIO = useMappedIO;
         this.symbolFilePrefix = symbolFilePrefix;
         symbolFilePrefixLength = (symbolFilePrefix == null ? 0 :
                 symbolFilePrefix.getPath().getBytes("UTF-8").length);
@@ -173,6 +219,8 @@ public class ZipFileIndex {
         boolean isUpToDate = true;
         if (!isUpToDate()) {
             closeFile();
+            publishedDirectories = null;
+            mappedZip = null;
             isUpToDate = false;
         }
 
@@ -184,10 +232,13 @@ public class ZipFileIndex {
         hasPopulatedData = true;
 
         if (readIndex()) {
+            publishIndex();
             lastReferenceTimeStamp = System.currentTimeMillis();
             return;
         }
 
+        readFromIndex = false;
+        zipIndexBuffer = null;
         directories = Collections.<RelativeDirectory, DirectoryEntry>emptyMap();
         allDirs = Collections.<RelativeDirectory>emptySet();
 
@@ -198,6 +249,7 @@ public class ZipFileIndex {
             // 初始化zipRandomFile变量
             openFile();
             long totalLength = zipRandomFile.length();
+            zipFileLength = totalLength;
             // ZipDirectory类是ZipFileIndex类内定义的一个私有成员类，
             // 这个类中的相关方法将按照压缩包的格式从zipRandomFile中读取压缩包中的目录和文件，
             // 然后保存到ZipFileIndex类中一个全局私有的变量entries中，供其他方法查
@@ -211,9 +263,51 @@ public class ZipFileIndex {
             }
         }
 
+        publishIndex();
         lastReferenceTimeStamp = System.currentTimeMillis();
     }
 
+    /**
+     * When using mapped I/O, map the archive and publish the index. All
+     * lazily computed parts of the index are computed first, so that the
+     * published index is never modified again and can be read without
+     * locking.
+     */
+    private void publishIndex() throws IOException {
+        if (!useMappedIO || zipFile == null) {
+            return;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                return; // too large for a single mapping; keep using zipRandomFile
+            }
+            mappedZip = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+
+        for (DirectoryEntry de : directories.values()) {
+            de.getFiles();
+            de.getDirectories();
+            de.getEntries();
+        }
+        if (allDirs == Collections.EMPTY_SET) {
+            allDirs = new HashSet<RelativeDirectory>(directories.keySet());
+        }
+        publishedDirectories = directories;
+    }
+
+    /**
+     * Returns the published index, or null if lookups must lock the index
+     * and check it is up to date.
+     */
+    private Map<RelativeDirectory, DirectoryEntry> getPublishedDirectories() {
+        return NON_BATCH_MODE ? null : publishedDirectories;
+    }
+
     private void openFile() throws FileNotFoundException {
         if (zipRandomFile == null && zipFile != null) {
             zipRandomFile = new RandomAccessFile(zipFile, "r");
@@ -247,7 +341,18 @@ public class ZipFileIndex {
      * Returns the ZipFileIndexEntry for a path, if there is one.
      */
     // 通过相对路径查找文件
-    synchronized Entry getZipIndexEntry(RelativePath path) {
+    Entry getZipIndexEntry(RelativePath path) {
+        Map<RelativeDirectory, DirectoryEntry> published = getPublishedDirectories();
+        if (published != null) {
+            DirectoryEntry de = published.get(path.dirname());
+            return (de == null) ? null : de.getEntry(path.basename());
+        }
+        synchronized (this) {
+            return getZipIndexEntryLocked(path);
+        }
+    }
+
+    private Entry getZipIndexEntryLocked(RelativePath path) {
         try {
             // 读取压缩包相关内容
             checkIndex();
@@ -263,7 +368,18 @@ public class ZipFileIndex {
      * Returns a javac List of filenames within a directory in the ZipFileIndex.
      */
     // 通过相对路径path查找所有的文件，以列表的形式返回所有文件的名称
-    public synchronized com.sun.tools.javac.util.List<String> getFiles(RelativeDirectory path) {
+    public com.sun.tools.javac.util.List<String> getFiles(RelativeDirectory path) {
+        Map<RelativeDirectory, DirectoryEntry> published = getPublishedDirectories();
+        if (published != null) {
+            DirectoryEntry de = published.get(path);
+            return (de == null) ? com.sun.tools.javac.util.List.<String>nil() : de.getFiles();
+        }
+        synchronized (this) {
+            return getFilesLocked(path);
+        }
+    }
+
+    private com.sun.tools.javac.util.List<String> getFilesLocked(RelativeDirectory path) {
         try {
             // 读取压缩包相关内容
             // 调用checkIndex()方法确保压缩包内容已经被读取并且是最新的
@@ -281,7 +397,18 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized List<String> getDirectories(RelativeDirectory path) {
+    public List<String> getDirectories(RelativeDirectory path) {
+        Map<RelativeDirectory, DirectoryEntry> published = getPublishedDirectories();
+        if (published != null) {
+            DirectoryEntry de = published.get(path);
+            return (de == null) ? com.sun.tools.javac.util.List.<String>nil() : de.getDirectories();
+        }
+        synchronized (this) {
+            return getDirectoriesLocked(path);
+        }
+    }
+
+    private List<String> getDirectoriesLocked(RelativeDirectory path) {
         try {
             checkIndex();
 
@@ -298,7 +425,16 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized Set<RelativeDirectory> getAllDirectories() {
+    public Set<RelativeDirectory> getAllDirectories() {
+        if (getPublishedDirectories() != null) {
+            return allDirs;
+        }
+        synchronized (this) {
+            return getAllDirectoriesLocked();
+        }
+    }
+
+    private Set<RelativeDirectory> getAllDirectoriesLocked() {
         try {
             checkIndex();
             if (allDirs == Collections.EMPTY_SET) {
@@ -318,7 +454,16 @@ public class ZipFileIndex {
      * @param path A path within the zip.
      * @return True if the path is a file or dir, false otherwise.
      */
-    public synchronized boolean contains(RelativePath path) {
+    public boolean contains(RelativePath path) {
+        if (getPublishedDirectories() != null) {
+            return getZipIndexEntry(path) != null;
+        }
+        synchronized (this) {
+            return containsLocked(path);
+        }
+    }
+
+    private boolean containsLocked(RelativePath path) {
         try {
             checkIndex();
             return getZipIndexEntry(path) != null;
@@ -327,7 +472,17 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized boolean isDirectory(RelativePath path) throws IOException {
+    public boolean isDirectory(RelativePath path) throws IOException {
+        Map<RelativeDirectory, DirectoryEntry> published = getPublishedDirectories();
+        if (published != null) {
+            return path.getPath().length() == 0 || published.get(path) != null;
+        }
+        synchronized (this) {
+            return isDirectoryLocked(path);
+        }
+    }
+
+    private boolean isDirectoryLocked(RelativePath path) throws IOException {
         // The top level in a zip file is always a directory.
         if (path.getPath().length() == 0) {
             lastReferenceTimeStamp = System.currentTimeMillis();
@@ -338,7 +493,7 @@ public class ZipFileIndex {
         return directories.get(path) != null;
     }
 
-    public synchronized long getLastModified(RelativeFile path) throws IOException {
+    public long getLastModified(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null) {
             throw new FileNotFoundException();
@@ -346,7 +501,7 @@ public class ZipFileIndex {
         return entry.getLastModified();
     }
 
-    public synchronized int length(RelativeFile path) throws IOException {
+    public int length(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null) {
             throw new FileNotFoundException();
@@ -356,6 +511,19 @@ public class ZipFileIndex {
             return 0;
         }
 
+        ByteBuffer zip = mappedZip;
+        if (zip != null) {
+            checkMappedHeader(zip, entry);
+            // entry is not compressed?
+            return (get2ByteLittleEndian(zip, entry.offset + 8) == 0) ? entry.compressedSize : entry.size;
+        }
+
+        synchronized (this) {
+            return lengthLocked(entry);
+        }
+    }
+
+    private int lengthLocked(Entry entry) throws IOException {
         byte[] header = getHeader(entry);
         // entry is not compressed?
         if (get2ByteLittleEndian(header, 8) == 0) {
@@ -365,7 +533,7 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized byte[] read(RelativeFile path) throws IOException {
+    public byte[] read(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null) {
             throw new FileNotFoundException("Path not found in ZIP: " + path.path);
@@ -373,14 +541,59 @@ public class ZipFileIndex {
         return read(entry);
     }
 
-    synchronized byte[] read(Entry entry) throws IOException {
+    byte[] read(Entry entry) throws IOException {
+        ByteBuffer zip = mappedZip;
+        if (zip != null) {
+            ByteBuffer contents = readMapped(zip, entry);
+            if (contents.hasArray()) {
+                return contents.array();
+            }
+            byte[] result = new byte[contents.remaining()];
+            contents.get(result);
+            return result;
+        }
+        synchronized (this) {
+            return readLocked(entry);
+        }
+    }
+
+    /**
+     * Read the contents of an entry as a buffer. When the archive is mapped,
+     * the contents of a stored entry are a read-only slice of the mapping.
+     */
+    ByteBuffer readBuffer(Entry entry) throws IOException {
+        ByteBuffer zip = mappedZip;
+        if (zip != null) {
+            return readMapped(zip, entry);
+        }
+        return ByteBuffer.wrap(read(entry));
+    }
+
+    private synchronized byte[] readLocked(Entry entry) throws IOException {
         openFile();
         byte[] result = readBytes(entry);
         closeFile();
         return result;
     }
 
-    public synchronized int read(RelativeFile path, byte[] buffer) throws IOException {
+    /**
+     * Read the contents of an entry, keeping them so that they can be shared
+     * by every compilation that reads the same entry from this index, such
+     * as the compilations served by one compiler daemon. The contents are
+     * kept until the index is rebuilt or memory runs low. The returned
+     * array is shared and must not be modified.
+     */
+    byte[] readShared(Entry entry) throws IOException {
+        SoftReference<byte[]> ref = entry.sharedContents;
+        byte[] result = (ref == null ? null : ref.get());
+        if (result == null) {
+            result = read(entry);
+            entry.sharedContents = new SoftReference<byte[]>(result);
+        }
+        return result;
+    }
+
+    public int read(RelativeFile path, byte[] buffer) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null) {
             throw new FileNotFoundException();
@@ -392,10 +605,18 @@ public class ZipFileIndex {
     // Zip utilities
     //----------------------------------------------------------------------------
 
-    synchronized int read(Entry entry, byte[] buffer)
+    int read(Entry entry, byte[] buffer)
             throws IOException {
-        int result = readBytes(entry, buffer);
-        return result;
+        ByteBuffer zip = mappedZip;
+        if (zip != null) {
+            ByteBuffer contents = readMapped(zip, entry);
+            contents.get(buffer, 0, Math.min(buffer.length, contents.remaining()));
+            return entry.size;
+        }
+        synchronized (this) {
+            int result = readBytes(entry, buffer);
+            return result;
+        }
     }
 
     private byte[] readBytes(Entry entry) throws IOException {
@@ -453,6 +674,54 @@ public class ZipFileIndex {
         return entry.size;
     }
 
+    /**
+     * Read an entry from the mapped archive. Nothing shared is modified,
+     * so this does not lock the index.
+     */
+    private ByteBuffer readMapped(ByteBuffer zip, Entry entry) throws IOException {
+        checkMappedHeader(zip, entry);
+        int start = entry.offset + 30
+                + get2ByteLittleEndian(zip, entry.offset + 26)
+                + get2ByteLittleEndian(zip, entry.offset + 28);
+        ByteBuffer data = zip.duplicate();
+        data.limit(start + entry.compressedSize);
+        data.position(start);
+        data = data.slice();
+
+        // is this compressed - offset 8 in the ZipEntry header
+        if (get2ByteLittleEndian(zip, entry.offset + 8) == 0) {
+            return data;
+        }
+
+        byte[] cbuf = new byte[entry.compressedSize];
+        data.get(cbuf);
+        byte[] buf = new byte[entry.size];
+        Inflater inflater = mappedInflater.get();
+        inflater.reset();
+        inflater.setInput(cbuf);
+        try {
+            if (inflater.inflate(buf) != entry.size) {
+                throw new ZipException("corrupted zip file");
+            }
+        } catch (DataFormatException ex) {
+            throw new ZipException("corrupted zip file");
+        }
+        return ByteBuffer.wrap(buf);
+    }
+
+    private void checkMappedHeader(ByteBuffer zip, Entry entry) throws IOException {
+        if (get2ByteLittleEndian(zip, entry.offset) + (get2ByteLittleEndian(zip, entry.offset + 2) << 16) != 0x04034b50) {
+            throw new ZipException("corrupted zip file");
+        }
+        if ((get2ByteLittleEndian(zip, entry.offset + 6) & 1) != 0) {
+            throw new ZipException("encrypted zip file"); // offset 6 in the header of the ZipFileEntry
+        }
+    }
+
+    private static int get2ByteLittleEndian(ByteBuffer buf, int pos) {
+        return (buf.get(pos) & 0xFF) + ((buf.get(pos + 1) & 0xFF) << 8);
+    }
+
     private byte[] getHeader(Entry entry) throws IOException {
         zipRandomFile.seek(entry.offset);
         byte[] header = new byte[30];
@@ -499,6 +768,56 @@ public class ZipFileIndex {
         }
     }
 
+    /*
+     * Optimized index files. An index file describes one archive, and may be
+     * shared by several compilations, also in different processes. It is only
+     * used if the archive still has the length, time stamp and end of central
+     * directory record it had when the index file was written, so a current
+     * index file can be used without reading the central directory of the
+     * archive. Index files are written to a temporary file first and then
+     * renamed, so a reader never sees a partially written index file.
+     *
+     * The file is read through a memory mapping. All values are big endian.
+     *
+     *   header       INDEX_HEADER_SIZE bytes:
+     *                  int magic, int version,
+     *                  long length of the archive,
+     *                  long last modified time of the archive,
+     *                  long position of the end of central directory record,
+     *                  long content hash (CRC-32 of that record),
+     *                  int length of the symbol file prefix,
+     *                  int number of directories, int number of entries,
+     *                  int offset of the string table,
+     *                  int offset and int length of the archive path
+     *   directories  sorted by name, INDEX_DIR_SIZE bytes each:
+     *                  int offset and int length of the name,
+     *                  int first entry, int number of entries
+     *   entries      grouped by directory and sorted by name,
+     *                INDEX_ENTRY_SIZE bytes each:
+     *                  int offset and int length of the name, int flags,
+     *                  int offset, int size, int compressed size,
+     *                  int native time
+     *   strings      UTF-8 encoded names, offsets are relative to the start
+     *                of the string table
+     */
+    private static final int INDEX_MAGIC = 0x4A5A4958; // "JZIX"
+    private static final int INDEX_VERSION = 2;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int INDEX_DIR_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 28;
+    private static final int INDEX_FLAG_DIR = 1;
+    private static final String INDEX_FILE_SUFFIX = ".index";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * Index files that have not been used for this long, and index files
+     * of archives that no longer exist or have changed, are deleted the
+     * first time an index file is written to a cache directory.
+     */
+    private static final long INDEX_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    private static final Set<File> evictedIndexDirs =
+            Collections.synchronizedSet(new HashSet<File>());
+
     private boolean readIndex() {
         if (triedToReadIndex || !usePreindexedCache) {
             return false;
@@ -507,41 +826,47 @@ public class ZipFileIndex {
         boolean ret = false;
         synchronized (this) {
             triedToReadIndex = true;
-            RandomAccessFile raf = null;
+            File indexFile = getIndexFile();
+            if (indexFile == null || !indexFile.isFile()) {
+                return false;
+            }
             try {
-                File indexFileName = getIndexFile();
-                raf = new RandomAccessFile(indexFileName, "r");
+                ByteBuffer index = mapIndexFile(indexFile);
+                if (!isCurrentIndex(index, getAbsoluteFile(), symbolFilePrefixLength)) {
+                    indexFile.delete();
+                    return false;
+                }
 
-                long fileStamp = raf.readLong();
-                if (zipFile.lastModified() != fileStamp) {
-                    ret = false;
-                } else {
-                    directories = new HashMap<RelativeDirectory, DirectoryEntry>();
-                    int numDirs = raf.readInt();
-                    for (int nDirs = 0; nDirs < numDirs; nDirs++) {
-                        int dirNameBytesLen = raf.readInt();
-                        byte[] dirNameBytes = new byte[dirNameBytesLen];
-                        raf.read(dirNameBytes);
-
-                        RelativeDirectory dirNameStr = getRelativeDirectory(new String(dirNameBytes, "UTF-8"));
-                        DirectoryEntry de = new DirectoryEntry(dirNameStr, this);
-                        de.numEntries = raf.readInt();
-                        de.writtenOffsetOffset = raf.readLong();
-                        directories.put(dirNameStr, de);
+                Map<RelativeDirectory, DirectoryEntry> dirs =
+                        new HashMap<RelativeDirectory, DirectoryEntry>();
+                int numDirs = index.getInt(44);
+                int numEntries = index.getInt(48);
+                for (int i = 0; i < numDirs; i++) {
+                    int dirRecord = INDEX_HEADER_SIZE + i * INDEX_DIR_SIZE;
+                    RelativeDirectory dirName = getRelativeDirectory(
+                            getIndexString(index, dirRecord));
+                    DirectoryEntry de = new DirectoryEntry(dirName, this);
+                    de.firstIndexEntry = index.getInt(dirRecord + 8);
+                    de.numEntries = index.getInt(dirRecord + 12);
+                    if (de.firstIndexEntry < 0 || de.numEntries < 0
+                            || de.firstIndexEntry + de.numEntries > numEntries) {
+                        return false;
                     }
-                    ret = true;
-                    zipFileLastModified = fileStamp;
+                    dirs.put(dirName, de);
                 }
+
+                directories = dirs;
+                zipFileLength = index.getLong(8);
+                zipFileLastModified = index.getLong(16);
+                endRecordPosition = index.getLong(24);
+                zipContentHash = index.getLong(32);
+                zipIndexBuffer = index;
+                indexEntriesOffset = INDEX_HEADER_SIZE + numDirs * INDEX_DIR_SIZE;
+                // keep the index file from being evicted while it is in use
+                indexFile.setLastModified(System.currentTimeMillis());
+                ret = true;
             } catch (Throwable t) {
                 // Do nothing
-            } finally {
-                if (raf != null) {
-                    try {
-                        raf.close();
-                    } catch (Throwable tt) {
-                        // Do nothing
-                    }
-                }
             }
             if (ret == true) {
                 readFromIndex = true;
@@ -551,6 +876,99 @@ public class ZipFileIndex {
         return ret;
     }
 
+    private static ByteBuffer mapIndexFile(File indexFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            long length = raf.length();
+            if (length < INDEX_HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new ZipFormatException("invalid index file");
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks that an index file has the current format, and describes the
+     * current contents of the given archive.
+     */
+    private static boolean isCurrentIndex(ByteBuffer index, File zipFile, int symbolFilePrefixLength)
+            throws IOException {
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION) {
+            return false;
+        }
+        int numDirs = index.getInt(44);
+        int numEntries = index.getInt(48);
+        int stringsOffset = index.getInt(52);
+        if (numDirs < 0 || numEntries < 0
+                || stringsOffset != INDEX_HEADER_SIZE + numDirs * INDEX_DIR_SIZE + numEntries * INDEX_ENTRY_SIZE
+                || stringsOffset > index.capacity()) {
+            return false;
+        }
+        if (!zipFile.getPath().equals(getIndexString(index, 56))
+                || index.getInt(40) != symbolFilePrefixLength
+                || index.getLong(8) != zipFile.length()
+                || index.getLong(16) != zipFile.lastModified()) {
+            return false;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+        try {
+            return index.getLong(32) == getEndRecordHash(raf, index.getLong(24));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the CRC-32 of the end of central directory record at the given
+     * position, or -1 if there is no such record.
+     */
+    private static long getEndRecordHash(RandomAccessFile raf, long pos) throws IOException {
+        byte[] endRecord = new byte[22];
+        if (pos < 0 || pos + endRecord.length > raf.length()) {
+            return -1;
+        }
+        raf.seek(pos);
+        raf.readFully(endRecord);
+        if (get4ByteLittleEndian(endRecord, 0) != 0x06054b50) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(endRecord, 0, endRecord.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the string referenced by the offset and length at the given
+     * position of an index file.
+     */
+    private static String getIndexString(ByteBuffer index, int pos) {
+        int offset = index.getInt(pos);
+        int length = index.getInt(pos + 4);
+        byte[] bytes = new byte[length];
+        ByteBuffer b = index.duplicate();
+        b.position(index.getInt(52) + offset);
+        b.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Reads an entry from the entry table of the index file.
+     */
+    private Entry readIndexEntry(RelativeDirectory dirName, int i) {
+        ByteBuffer index = zipIndexBuffer;
+        int entryRecord = indexEntriesOffset + i * INDEX_ENTRY_SIZE;
+        Entry entry = new Entry(dirName, getIndexString(index, entryRecord));
+        entry.isDir = (index.getInt(entryRecord + 8) & INDEX_FLAG_DIR) != 0;
+        entry.offset = index.getInt(entryRecord + 12);
+        entry.size = index.getInt(entryRecord + 16);
+        entry.compressedSize = index.getInt(entryRecord + 20);
+        entry.setNativeTime(index.getInt(entryRecord + 24));
+        return entry;
+    }
+
     private boolean writeIndex() {
         boolean ret = false;
         if (readFromIndex || !usePreindexedCache) {
@@ -562,105 +980,147 @@ public class ZipFileIndex {
         }
 
         File indexFile = getIndexFile();
-        if (indexFile == null) {
+        if (indexFile == null || !hasPopulatedData || endRecordPosition < 0) {
             return false;
         }
 
-        RandomAccessFile raf = null;
-        long writtenSoFar = 0;
+        File tmpFile = null;
         try {
-            raf = new RandomAccessFile(indexFile, "rw");
-
-            raf.writeLong(zipFileLastModified);
-            writtenSoFar += 8;
-
-            List<DirectoryEntry> directoriesToWrite = new ArrayList<DirectoryEntry>();
-            Map<RelativeDirectory, Long> offsets = new HashMap<RelativeDirectory, Long>();
-            raf.writeInt(directories.keySet().size());
-            writtenSoFar += 4;
-
-            for (RelativeDirectory dirName : directories.keySet()) {
-                DirectoryEntry dirEntry = directories.get(dirName);
-
-                directoriesToWrite.add(dirEntry);
-
-                // Write the dir name bytes
-                byte[] dirNameBytes = dirName.getPath().getBytes("UTF-8");
-                int dirNameBytesLen = dirNameBytes.length;
-                raf.writeInt(dirNameBytesLen);
-                writtenSoFar += 4;
-
-                raf.write(dirNameBytes);
-                writtenSoFar += dirNameBytesLen;
-
-                // Write the number of files in the dir
-                List<Entry> dirEntries = dirEntry.getEntriesAsCollection();
-                raf.writeInt(dirEntries.size());
-                writtenSoFar += 4;
-
-                offsets.put(dirName, new Long(writtenSoFar));
+            List<RelativeDirectory> dirNames = new ArrayList<RelativeDirectory>(directories.keySet());
+            Collections.sort(dirNames);
+            int numEntries = 0;
+            for (RelativeDirectory dirName : dirNames) {
+                numEntries += directories.get(dirName).getEntriesAsCollection().size();
+            }
 
-                // Write the offset of the file's data in the dir
-                dirEntry.writtenOffsetOffset = 0L;
-                raf.writeLong(0L);
-                writtenSoFar += 8;
+            int stringsOffset = INDEX_HEADER_SIZE + dirNames.size() * INDEX_DIR_SIZE
+                    + numEntries * INDEX_ENTRY_SIZE;
+            ByteBuffer tables = ByteBuffer.allocate(stringsOffset);
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+            tables.putInt(0, INDEX_MAGIC);
+            tables.putInt(4, INDEX_VERSION);
+            tables.putLong(8, zipFileLength);
+            tables.putLong(16, zipFileLastModified);
+            tables.putLong(24, endRecordPosition);
+            tables.putLong(32, zipContentHash);
+            tables.putInt(40, symbolFilePrefixLength);
+            tables.putInt(44, dirNames.size());
+            tables.putInt(48, numEntries);
+            tables.putInt(52, stringsOffset);
+            putIndexString(tables, 56, strings, getAbsoluteFile().getPath());
+
+            int entryIndex = 0;
+            for (int i = 0; i < dirNames.size(); i++) {
+                RelativeDirectory dirName = dirNames.get(i);
+                List<Entry> dirEntries = directories.get(dirName).getEntriesAsCollection();
+                int dirRecord = INDEX_HEADER_SIZE + i * INDEX_DIR_SIZE;
+                putIndexString(tables, dirRecord, strings, dirName.getPath());
+                tables.putInt(dirRecord + 8, entryIndex);
+                tables.putInt(dirRecord + 12, dirEntries.size());
+
+                for (Entry zfie : dirEntries) {
+                    int entryRecord = INDEX_HEADER_SIZE + dirNames.size() * INDEX_DIR_SIZE
+                            + entryIndex * INDEX_ENTRY_SIZE;
+                    putIndexString(tables, entryRecord, strings, zfie.name);
+                    tables.putInt(entryRecord + 8, zfie.isDir ? INDEX_FLAG_DIR : 0);
+                    tables.putInt(entryRecord + 12, zfie.offset);
+                    tables.putInt(entryRecord + 16, zfie.size);
+                    tables.putInt(entryRecord + 20, zfie.compressedSize);
+                    tables.putInt(entryRecord + 24, zfie.nativetime);
+                    entryIndex++;
+                }
             }
 
-            for (DirectoryEntry de : directoriesToWrite) {
-                // Fix up the offset in the directory table
-                long currFP = raf.getFilePointer();
-
-                long offsetOffset = offsets.get(de.dirName).longValue();
-                raf.seek(offsetOffset);
-                raf.writeLong(writtenSoFar);
-
-                raf.seek(currFP);
-
-                // Now write each of the files in the DirectoryEntry
-                List<Entry> list = de.getEntriesAsCollection();
-                for (Entry zfie : list) {
-                    // Write the name bytes
-                    byte[] zfieNameBytes = zfie.name.getBytes("UTF-8");
-                    int zfieNameBytesLen = zfieNameBytes.length;
-                    raf.writeInt(zfieNameBytesLen);
-                    writtenSoFar += 4;
-                    raf.write(zfieNameBytes);
-                    writtenSoFar += zfieNameBytesLen;
-
-                    // Write isDir
-                    raf.writeByte(zfie.isDir ? (byte) 1 : (byte) 0);
-                    writtenSoFar += 1;
-
-                    // Write offset of bytes in the real Jar/Zip file
-                    raf.writeInt(zfie.offset);
-                    writtenSoFar += 4;
-
-                    // Write size of the file in the real Jar/Zip file
-                    raf.writeInt(zfie.size);
-                    writtenSoFar += 4;
-
-                    // Write compressed size of the file in the real Jar/Zip file
-                    raf.writeInt(zfie.compressedSize);
-                    writtenSoFar += 4;
-
-                    // Write java time stamp of the file in the real Jar/Zip file
-                    raf.writeLong(zfie.getLastModified());
-                    writtenSoFar += 8;
+            File indexDir = indexFile.getAbsoluteFile().getParentFile();
+            tmpFile = File.createTempFile(indexFile.getName(), ".tmp", indexDir);
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(tables.array());
+                strings.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(indexFile)) {
+                // some platforms do not allow replacing an existing file
+                indexFile.delete();
+                if (!tmpFile.renameTo(indexFile)) {
+                    return false;
                 }
             }
+            tmpFile = null;
+            ret = true;
+
+            if (evictedIndexDirs.add(indexDir)) {
+                evictStaleIndexes(indexDir);
+            }
         } catch (Throwable t) {
             // Do nothing
         } finally {
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+
+        return ret;
+    }
+
+    private static void putIndexString(ByteBuffer tables, int pos,
+                                       ByteArrayOutputStream strings, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        tables.putInt(pos, strings.size());
+        tables.putInt(pos + 4, bytes.length);
+        strings.write(bytes);
+    }
+
+    /**
+     * Deletes the index files in a cache directory that have not been used
+     * for INDEX_MAX_AGE, and the index files of archives that no longer
+     * exist or have changed. Files that are not index files in the current
+     * format are left alone.
+     */
+    private static void evictStaleIndexes(File indexDir) {
+        File[] files = indexDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - INDEX_MAX_AGE;
+        for (File f : files) {
+            if (!f.getName().endsWith(INDEX_FILE_SUFFIX) || !f.isFile()) {
+                continue;
+            }
             try {
-                if (raf != null) {
+                boolean stale;
+                RandomAccessFile raf = new RandomAccessFile(f, "r");
+                try {
+                    if (raf.length() < INDEX_HEADER_SIZE || raf.readInt() != INDEX_MAGIC) {
+                        continue;
+                    }
+                    if (raf.readInt() != INDEX_VERSION || f.lastModified() < oldest) {
+                        stale = true;
+                    } else {
+                        long zipLength = raf.readLong();
+                        long zipLastModified = raf.readLong();
+                        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+                        raf.seek(0);
+                        raf.readFully(header.array());
+                        raf.seek(header.getInt(52) + header.getInt(56));
+                        byte[] path = new byte[header.getInt(60)];
+                        raf.readFully(path);
+                        File zipFile = new File(new String(path, UTF8));
+                        stale = zipFile.length() != zipLength
+                                || zipFile.lastModified() != zipLastModified;
+                    }
+                } finally {
                     raf.close();
                 }
-            } catch (IOException ioe) {
-                // Do nothing
+                if (stale) {
+                    f.delete();
+                }
+            } catch (IOException e) {
+                // Do nothing, the file may be in use or already deleted
             }
         }
-
-        return ret;
     }
 
     public boolean writeZipIndex() {
@@ -669,14 +1129,21 @@ public class ZipFileIndex {
         }
     }
 
+    /**
+     * Returns the index file for this archive. Index files for archives with
+     * the same name in different directories are kept apart by a hash of the
+     * absolute path of the archive.
+     */
     private File getIndexFile() {
         if (zipIndexFile == null) {
             if (zipFile == null) {
                 return null;
             }
 
+            String key = getAbsoluteFile().getPath()
+                    + (symbolFilePrefix == null ? "" : "!" + symbolFilePrefix.getPath());
             zipIndexFile = new File((preindexedCacheLocation == null ? "" : preindexedCacheLocation) +
-                    zipFile.getName() + ".index");
+                    zipFile.getName() + "-" + Integer.toHexString(key.hashCode()) + INDEX_FILE_SUFFIX);
         }
 
         return zipIndexFile;
@@ -725,7 +1192,7 @@ public class ZipFileIndex {
         private boolean zipFileEntriesInited;
         private boolean entriesInited;
 
-        private long writtenOffsetOffset = 0;
+        private int firstIndexEntry = 0;
 
         private RelativeDirectory dirName;
 
@@ -824,54 +1291,8 @@ public class ZipFileIndex {
                     entries.add(zipFileIndex.entries[i]);
                 }
             } else {
-                File indexFile = zipFileIndex.getIndexFile();
-                if (indexFile != null) {
-                    RandomAccessFile raf = null;
-                    try {
-                        raf = new RandomAccessFile(indexFile, "r");
-                        raf.seek(writtenOffsetOffset);
-
-                        for (int nFiles = 0; nFiles < numEntries; nFiles++) {
-                            // Read the name bytes
-                            int zfieNameBytesLen = raf.readInt();
-                            byte[] zfieNameBytes = new byte[zfieNameBytesLen];
-                            raf.read(zfieNameBytes);
-                            String eName = new String(zfieNameBytes, "UTF-8");
-
-                            // Read isDir
-                            boolean eIsDir = raf.readByte() == (byte) 0 ? false : true;
-
-                            // Read offset of bytes in the real Jar/Zip file
-                            int eOffset = raf.readInt();
-
-                            // Read size of the file in the real Jar/Zip file
-                            int eSize = raf.readInt();
-
-                            // Read compressed size of the file in the real Jar/Zip file
-                            int eCsize = raf.readInt();
-
-                            // Read java time stamp of the file in the real Jar/Zip file
-                            long eJavaTimestamp = raf.readLong();
-
-                            Entry rfie = new Entry(dirName, eName);
-                            rfie.isDir = eIsDir;
-                            rfie.offset = eOffset;
-                            rfie.size = eSize;
-                            rfie.compressedSize = eCsize;
-                            rfie.javatime = eJavaTimestamp;
-                            entries.add(rfie);
-                        }
-                    } catch (Throwable t) {
-                        // Do nothing
-                    } finally {
-                        try {
-                            if (raf != null) {
-                                raf.close();
-                            }
-                        } catch (Throwable t) {
-                            // Do nothing
-                        }
-                    }
+                for (int i = 0; i < numEntries; i++) {
+                    entries.add(zipFileIndex.readIndexEntry(dirName, firstIndexEntry + i));
                 }
             }
 
@@ -903,10 +1324,13 @@ public class ZipFileIndex {
         int offset;
         int size;
         int compressedSize;
-        long javatime;
+        volatile long javatime;
 
         private int nativetime;
 
+        /** The contents of this entry, if read by readShared. */
+        volatile SoftReference<byte[]> sharedContents;
+
         public Entry(RelativePath path) {
             this(path.dirname(), path.basename());
         }
@@ -1097,6 +1521,11 @@ public class ZipFileIndex {
                     zipRandomFile.seek(start + sz);
                     // 读取所有File header的内容并保存到zipDir数组中
                     zipRandomFile.readFully(zipDir, 2, zipDir.length - 2);
+
+                    CRC32 crc = new CRC32();
+                    crc.update(endbuf, i, 22);
+                    zipFileIndex.endRecordPosition = start + endbufpos + i;
+                    zipFileIndex.zipContentHash = crc.getValue();
                     return;
                 } else {
                     endbufend = endbufpos + 21;
@@ -151,7 +151,11 @@ public class ZipFileIndexArchive implements Archive {
         public InputStream openInputStream() throws IOException {
             if (inputStream == null) {
                 Assert.checkNonNull(entry); // see constructor
-                inputStream = new ByteArrayInputStream(zfIndex.read(entry));
+                fileManager.countZipRead(entry.size);
+                if (fileManager.shareClassFiles && getKind() == Kind.CLASS)
+                    inputStream = new ByteArrayInputStream(zfIndex.readShared(entry));
+                else
+                    inputStream = new ByteBufferInputStream(zfIndex.readBuffer(entry));
             }
             return inputStream;
         }
@@ -165,6 +169,7 @@ public class ZipFileIndexArchive implements Archive {
         public CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
             CharBuffer cb = fileManager.getCachedContent(this);
             if (cb == null) {
+                fileManager.countZipRead(entry.size);
                 InputStream in = new ByteArrayInputStream(zfIndex.read(entry));
                 try {
                     ByteBuffer bb = fileManager.makeByteBuffer(in);
@@ -254,4 +259,44 @@ public class ZipFileIndexArchive implements Archive {
         }
     }
 
+    /**
+     * An input stream reading the remaining contents of a buffer, such as a
+     * slice of a memory mapped archive.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.min(Math.max(n, 0), buf.remaining());
+            buf.position(buf.position() + k);
+            return k;
+        }
+    }
+
 }
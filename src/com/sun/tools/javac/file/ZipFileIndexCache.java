@@ -95,13 +95,26 @@ public class ZipFileIndexCache {
             RelativeDirectory symbolFilePrefix,
             boolean useCache, String cacheLocation,
             boolean writeIndex) throws IOException {
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation,
+                writeIndex, false);
+    }
+
+    /**
+     * Returns the index for a zip file, creating it if there is none or the
+     * file has been modified. Whether a new index memory maps the file is
+     * given by useMappedIO; an existing index is shared as it is.
+     */
+    public synchronized ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean useMappedIO) throws IOException {
         // getZipFileIndex()方法首先调用getExistingZipIndex()方法判断map中是否存在对应的ZipFileIndex对象，
         // 如果不存在或者文件内容已经更新，则创建一个新的ZipFileIndex对象并存储到map中。
         ZipFileIndex zi = getExistingZipIndex(zipFile);
         // 如果ZipFileIndex对象不存在或者文件内容已经更新，则创建一个新的ZipFileIndex对象
         if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)) {
             zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
-                    useCache, cacheLocation);
+                    useCache, cacheLocation, useMappedIO);
             map.put(zipFile, zi);
         }
         return zi;
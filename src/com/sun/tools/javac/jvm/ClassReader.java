@@ -50,6 +50,7 @@ import com.sun.tools.javac.code.Type.*;
 import com.sun.tools.javac.code.Symbol.*;
 import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.file.BaseFileObject;
+import com.sun.tools.javac.main.CompileStatistics;
 import com.sun.tools.javac.util.*;
 import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
 
@@ -85,6 +86,10 @@ public class ClassReader implements Completer {
      */
     boolean verbose;
 
+    /** Counters for -XDstats, or null.
+     */
+    CompileStatistics stats;
+
     /** Switch: check class file for correct minor version, unrecognized
      *  attributes.
      */
@@ -286,6 +291,7 @@ public class ClassReader implements Completer {
         annotate = Annotate.instance(context);
         verbose        = options.isSet(VERBOSE);
         checkClassFile = options.isSet("-checkclassfile");
+        stats = CompileStatistics.instance(context);
         Source source = Source.instance(context);
         allowGenerics    = source.allowGenerics();
         allowVarargs     = source.allowVarargs();
@@ -2160,6 +2166,13 @@ public class ClassReader implements Completer {
             return c;
     }
 
+    /** Has a class symbol with given flat name been entered in `classes',
+     *  whether or not it has been completed?
+     */
+    public boolean isEntered(Name flatname) {
+        return classes.get(flatname) != null;
+    }
+
     private boolean suppressFlush = false;
 
     /** Completion for classes to be loaded. Before a class is loaded
@@ -2262,6 +2275,8 @@ public class ClassReader implements Completer {
                         // 读取数据存到buf数组中
                         buf = readInputStream(buf, classfile.openInputStream());
                         readClassFile(c);
+                        if (stats != null)
+                            stats.classRead(bp);
                         if (!missingTypeVariables.isEmpty() && !foundTypeVariables.isEmpty()) {
                             List<Type> missing = missingTypeVariables;
                             List<Type> found = foundTypeVariables;
@@ -2286,6 +2301,8 @@ public class ClassReader implements Completer {
                 } else {
                     // java源文件
                     if (sourceCompleter != null) {
+                        if (stats != null)
+                            stats.sourceCompleted();
                         // 调用sourceCompleter的complete()方法完成成员符号的填充
                         sourceCompleter.complete(c);
                     } else {
@@ -2523,6 +2540,8 @@ public class ClassReader implements Completer {
     private void fillIn(PackageSymbol p) throws IOException {
         if (p.members_field == null)
             p.members_field = new Scope(p);
+        if (stats != null)
+            stats.packageCompleted();
         String packageName = p.fullname.toString();
         // 需要的文件包含两种类型，.class/.java
         Set<JavaFileObject.Kind> kinds = getPackageFileKinds();
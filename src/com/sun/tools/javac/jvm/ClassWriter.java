@@ -26,8 +26,13 @@
 package com.sun.tools.javac.jvm;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.tools.JavaFileManager;
 import javax.tools.FileObject;
@@ -1550,6 +1555,14 @@ public class ClassWriter extends ClassFile {
                                                c.flatname.toString(),
                                                JavaFileObject.Kind.CLASS,
                                                c.sourcefile);
+        if (backgroundWriter != null) {
+            assembleClassFile(c);
+            byte[] bytes = new byte[poolbuf.length + databuf.length];
+            System.arraycopy(poolbuf.elems, 0, bytes, 0, poolbuf.length);
+            System.arraycopy(databuf.elems, 0, bytes, poolbuf.length, databuf.length);
+            writeInBackground(outFile, c, bytes);
+            return outFile;
+        }
         OutputStream out = outFile.openOutputStream();
         try {
             // Javac使用ClassWriter类向Class文件写入字节码内容
@@ -1573,6 +1586,29 @@ public class ClassWriter extends ClassFile {
      */
     public void writeClassFile(OutputStream out, ClassSymbol c)
         throws IOException, PoolOverflow, StringOverflow {
+        assembleClassFile(c);
+        if (out instanceof FileOutputStream) {
+            // one gathering write of both buffers, without joining them first
+            FileChannel ch = ((FileOutputStream) out).getChannel();
+            java.nio.ByteBuffer[] segments = {
+                java.nio.ByteBuffer.wrap(poolbuf.elems, 0, poolbuf.length),
+                java.nio.ByteBuffer.wrap(databuf.elems, 0, databuf.length)
+            };
+            while (segments[1].hasRemaining())
+                ch.write(segments);
+        } else {
+            out.write(poolbuf.elems, 0, poolbuf.length);
+            out.write(databuf.elems, 0, databuf.length);
+        }
+    }
+
+    /** Assemble the class file for class `c': its header and constant
+     *  pool in poolbuf, followed by the rest of it in databuf.  Both
+     *  buffers are kept for the next class, at the size the largest class
+     *  so far has needed.
+     */
+    void assembleClassFile(ClassSymbol c)
+        throws PoolOverflow, StringOverflow {
         Assert.check((c.flags() & COMPOUND) == 0);
         // 成员信息的输出缓冲区清空
         databuf.reset();
@@ -1719,12 +1755,125 @@ public class ClassWriter extends ClassFile {
         }
         endAttrs(acountIdx, acount);
 
-        poolbuf.appendBytes(databuf.elems, 0, databuf.length);
-        out.write(poolbuf.elems, 0, poolbuf.length);
-
         pool = c.pool = null; // to conserve space
      }
 
+/******************************************************************
+ * Writing class files in the background
+ ******************************************************************/
+
+    /** The maximum number of assembled class files that may be waiting
+     *  to be written before the compiler thread waits for the oldest one.
+     */
+    static final int MAX_PENDING_WRITES = 256;
+
+    /** The threads writing assembled class files, or null if class files
+     *  are written by the compiler thread itself.
+     */
+    private ExecutorService backgroundWriter;
+
+    /** The class files handed to the background writer, in the order
+     *  in which they were assembled.
+     */
+    private ListBuffer<PendingWrite> pendingWrites;
+
+    /** A class file being written by the background writer.
+     */
+    private static class PendingWrite {
+        final ClassSymbol c;
+        final JavaFileObject outFile;
+        final Future<Void> done;
+        PendingWrite(ClassSymbol c, JavaFileObject outFile, Future<Void> done) {
+            this.c = c;
+            this.outFile = outFile;
+            this.done = done;
+        }
+    }
+
+    /** Write class files on `nthreads' background threads from now on.
+     *  Class files are still assembled on the compiler thread, so their
+     *  contents do not change; only opening, writing and closing the
+     *  output files is moved off the compiler thread.
+     */
+    public void startBackgroundWriting(int nthreads) {
+        if (backgroundWriter != null)
+            return;
+        backgroundWriter = WorkerThreads.newPool(nthreads, "classwriter");
+        pendingWrites = new ListBuffer<PendingWrite>();
+    }
+
+    /** Wait until all class files handed to the background writer have
+     *  been written, and go back to writing class files on the compiler
+     *  thread. Failures are reported in the order the classes were
+     *  assembled.
+     */
+    public void finishBackgroundWriting() {
+        if (backgroundWriter == null)
+            return;
+        try {
+            completePendingWrites();
+        } finally {
+            backgroundWriter.shutdown();
+            backgroundWriter = null;
+            pendingWrites = null;
+        }
+    }
+
+    /** Wait until all class files handed to the background writer so far
+     *  have been written, reporting failures as finishBackgroundWriting
+     *  does, and keep writing in the background afterwards.
+     */
+    public void completePendingWrites() {
+        if (backgroundWriter == null)
+            return;
+        while (pendingWrites.nonEmpty())
+            completeWrite(pendingWrites.next());
+    }
+
+    private void writeInBackground(final JavaFileObject outFile, ClassSymbol c, final byte[] bytes) {
+        if (pendingWrites.size() >= MAX_PENDING_WRITES)
+            completeWrite(pendingWrites.next());
+        Future<Void> done = backgroundWriter.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+                OutputStream out = outFile.openOutputStream();
+                try {
+                    out.write(bytes);
+                    out.close();
+                    out = null;
+                } finally {
+                    if (out != null) {
+                        // if we are propogating an exception, delete the file
+                        out.close();
+                        outFile.delete();
+                    }
+                }
+                return null;
+            }
+        });
+        pendingWrites.append(new PendingWrite(c, outFile, done));
+    }
+
+    private void completeWrite(PendingWrite w) {
+        try {
+            w.done.get();
+            if (verbose)
+                log.printVerbose("wrote.file", w.outFile);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new Abort(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                log.error("class.cant.write", w.c, cause.getMessage());
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            else if (cause instanceof Error)
+                throw (Error)cause;
+            else
+                throw new Abort(cause);
+        }
+    }
+
     int adjustFlags(final long flags) {
         int result = (int)flags;
         // 由于SYNTHETIC、ENUM和ANNOTATION是Class文件版本号为49.0时才添加上去的，
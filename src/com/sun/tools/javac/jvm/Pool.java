@@ -25,9 +25,9 @@
 
 package com.sun.tools.javac.jvm;
 
-import java.util.*;
-
+import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.*;
+import com.sun.tools.javac.jvm.ClassFile.NameAndType;
 
 /** An internal structure that corresponds to the constant pool of a classfile.
  *
@@ -53,11 +53,20 @@ public class Pool {
     // 用于存储常量池中不同类型的数据对象
     Object[] pool;
 
-    /** A hashtable containing all constants in the pool.
+    /** A hashtable containing all constants in the pool: open addressing
+     *  over the pool indices, 0 marking a free slot.  Unlike a
+     *  HashMap<Object,Integer> it needs no entry objects or boxed indices,
+     *  and it is emptied in time proportional to the entries, so one pool
+     *  serves every class Gen generates.
      */
     // indices保存了pool数组中所有对象到这个数组下标的映射
-    // 在字节码指令生成过程中，需要频繁查找某个对象在常量池中的下标，因此为了提高查找效率，使用了Map结构来保存映射关系。
-    Map<Object,Integer> indices;
+    // 在字节码指令生成过程中，需要频繁查找某个对象在常量池中的下标，因此为了提高查找效率，使用了散列表来保存映射关系。
+    int[] indices;
+
+    /** The hash code of each pool entry, and the slot of indices it is in.
+     */
+    int[] hashes;
+    int[] slots;
 
     /** Construct a pool with given number of elements and element array.
      */
@@ -66,9 +75,21 @@ public class Pool {
         // 这样主要是为了做到与Class中常量池的规定一致，即索引值为0的位置代表不引用任何值
         this.pp = pp;
         this.pool = pool;
-        this.indices = new HashMap<Object,Integer>(pool.length);
+        this.hashes = new int[pool.length];
+        this.slots = new int[pool.length];
+        this.indices = new int[tableSize(pool.length)];
         for (int i = 1; i < pp; i++) {
-            if (pool[i] != null) indices.put(pool[i], i);
+            if (pool[i] != null) {
+                hashes[i] = hash(pool[i]);
+                int prev = lookup(pool[i], hashes[i], false);
+                if (prev < 0) {
+                    enter(i);
+                } else {
+                    // a later duplicate takes the place of the earlier one
+                    slots[i] = slots[prev];
+                    indices[slots[i]] = i;
+                }
+            }
         }
     }
 
@@ -87,8 +108,13 @@ public class Pool {
     /** Remove everything from this pool.
      */
     public void reset() {
+        for (int i = 1; i < pp; i++) {
+            if (pool[i] != null) {
+                indices[slots[i]] = 0;
+                pool[i] = null;
+            }
+        }
         pp = 1;
-        indices.clear();
     }
 
     /** Double pool buffer in size.
@@ -98,6 +124,27 @@ public class Pool {
         Object[] newpool = new Object[pool.length * 2];
         System.arraycopy(pool, 0, newpool, 0, pool.length);
         pool = newpool;
+        int[] newhashes = new int[newpool.length];
+        System.arraycopy(hashes, 0, newhashes, 0, hashes.length);
+        hashes = newhashes;
+        int[] newslots = new int[newpool.length];
+        System.arraycopy(slots, 0, newslots, 0, slots.length);
+        slots = newslots;
+        if (indices.length < tableSize(newpool.length)) {
+            int[] oldindices = indices;
+            indices = new int[tableSize(newpool.length)];
+            for (int i = 1; i < pp; i++) {
+                if (pool[i] != null && oldindices[slots[i]] == i)
+                    enter(i);
+            }
+        }
+    }
+
+    /** The size of hashtable for a pool buffer of the given size,
+     *  which keeps the table at most half full.
+     */
+    private static int tableSize(int poolLength) {
+        return Integer.highestOneBit(Math.max(poolLength, 32) - 1) << 2;
     }
 
     /** Place an object in the pool, unless it is already there.
@@ -106,28 +153,31 @@ public class Pool {
      */
     // put()方法向常量池中放入某个对象并返回这个对象在常量池中存储的索引
     public int put(Object value) {
-        // 如果在常量池中存储的是MethodSymbol或VarSymbol对象，还需要分别封装为Method对象与Variable对象，
-        // 因为两个对象要作为key存储到Map<Object,Integer>对象indices中，所以要重新覆写hashCode()与equals()方法
-        if (value instanceof MethodSymbol)
-            value = new Method((MethodSymbol)value);
-        else if (value instanceof VarSymbol)
-            value = new Variable((VarSymbol)value);
-        Integer index = indices.get(value);
-        // 判断value是否已经存在于常量池中，如果index为null则表示不存在
-        if (index == null) {
+        int h = hash(value);
+        int index = lookup(value, h,
+                           value instanceof MethodSymbol || value instanceof VarSymbol);
+        // 判断value是否已经存在于常量池中，如果index为-1则表示不存在
+        if (index < 0) {
+            // 如果在常量池中存储的是MethodSymbol或VarSymbol对象，还需要分别封装为Method对象与Variable对象，
+            // 以name、owner及type来判断两个符号是否对应同一个常量池项
+            if (value instanceof MethodSymbol)
+                value = new Method((MethodSymbol)value);
+            else if (value instanceof VarSymbol)
+                value = new Variable((VarSymbol)value);
             index = pp;
-            // 向indices及pool数组中存储value
-            indices.put(value, index);
+            // 向pool数组及indices中存储value
             if (pp == pool.length)
                 doublePool();
             pool[pp++] = value;
+            hashes[index] = h;
+            enter(index);
             if (value instanceof Long || value instanceof Double) {
                 if (pp == pool.length)
                     doublePool();
                 pool[pp++] = null;
             }
         }
-        return index.intValue();
+        return index;
     }
 
     /** Return the given object's index in the pool,
@@ -135,9 +185,76 @@ public class Pool {
      */
     // get()方法可以获取常量池中某个对象的常量池索引
     public int get(Object o) {
-        Integer n = indices.get(o);
         // 如果常量池中没有存储这个对象，将会返回-1。
-        return n == null ? -1 : n.intValue();
+        return lookup(o, hash(o), false);
+    }
+
+    /** The hash code of a pool entry.  Method and field references hash
+     *  on their name and owner only, and name and type descriptors on
+     *  their name only: the hash codes of their types walk the types, and
+     *  these entries are mostly told apart by name anyway.
+     */
+    private static int hash(Object value) {
+        Symbol sym = null;
+        if (value instanceof MethodSymbol || value instanceof VarSymbol)
+            sym = (Symbol) value;
+        else if (value instanceof Method)
+            sym = ((Method) value).m;
+        else if (value instanceof Variable)
+            sym = ((Variable) value).v;
+        int h;
+        if (sym != null)
+            h = sym.name.hashCode() * 33 + System.identityHashCode(sym.owner) * 9;
+        else if (value instanceof NameAndType)
+            h = ((NameAndType) value).name.hashCode();
+        else
+            h = value.hashCode();
+        return h * 0x9E3779B9;
+    }
+
+    /** Find the index of the entry equal to value, or -1.  If member is
+     *  set, value is a symbol that is compared as the Method or Variable
+     *  it would be wrapped in.
+     */
+    private int lookup(Object value, int h, boolean member) {
+        int mask = indices.length - 1;
+        for (int slot = (h >>> 16 ^ h) & mask; ; slot = (slot + 1) & mask) {
+            int i = indices[slot];
+            if (i == 0)
+                return -1;
+            if (hashes[i] == h &&
+                (member ? sameMember((Symbol) value, pool[i]) : value.equals(pool[i])))
+                return i;
+        }
+    }
+
+    /** Is entry the Method or Variable that sym would be wrapped in?
+     *  Compares as Method.equals and Variable.equals do.
+     */
+    private static boolean sameMember(Symbol sym, Object entry) {
+        Symbol o;
+        if (sym instanceof MethodSymbol && entry instanceof Method)
+            o = ((Method) entry).m;
+        else if (sym instanceof VarSymbol && entry instanceof Variable)
+            o = ((Variable) entry).v;
+        else
+            return false;
+        return
+            o.name == sym.name &&
+            o.owner == sym.owner &&
+            o.type.equals(sym.type);
+    }
+
+    /** Enter the pool entry at the given index into indices.
+     */
+    private void enter(int index) {
+        int h = hashes[index];
+        int mask = indices.length - 1;
+        int slot = (h >>> 16 ^ h) & mask;
+        while (indices[slot] != 0)
+            slot = (slot + 1) & mask;
+        indices[slot] = index;
+        slots[index] = slot;
     }
 
     static class Method extends DelegatedSymbol {
@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.main;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+
+/**
+ * Time and allocation figures for the phases of a compilation, selected
+ * with "-XDstats" (written to the notice stream) or "-XDstats=<file>".
+ *
+ * <p>Each phase records wall time, CPU time and bytes allocated by the
+ * compiler thread, broken down by compilation unit and by top level
+ * class where that makes sense. Phases nest: a source file parsed while
+ * attributing another class is charged to parsing, not attribution, so
+ * the phase figures add up to the time spent in the compiler. Each
+ * annotation processing round is also listed on its own. CPU time and
+ * allocation are -1 if the virtual machine cannot measure them.
+ *
+ * <p>Figures for a compilation unit or class are recorded before the
+ * corresponding TaskEvent is finished, so a TaskListener can read them
+ * through {@link #instance} when it is notified.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class CompileStatistics {
+    /** The context key for the statistics. */
+    public static final Context.Key<CompileStatistics> statisticsKey =
+        new Context.Key<CompileStatistics>();
+
+    /** Get the statistics for this context, or null if they were not
+     *  requested with -XDstats.
+     */
+    public static CompileStatistics instance(Context context) {
+        CompileStatistics instance = context.get(statisticsKey);
+        if (instance == null) {
+            String s = Options.instance(context).get("stats");
+            if (s != null)
+                instance = new CompileStatistics(context, s);
+        }
+        return instance;
+    }
+
+    public enum Phase {
+        PARSE,
+        ENTER,
+        PROCESS,
+        ATTR,
+        FLOW,
+        DESUGAR,
+        GENERATE,
+        WRITE;
+
+        final String key = name().toLowerCase();
+    }
+
+    /** Wall time, CPU time and allocation for some piece of work. */
+    public static class Figures {
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        int count;
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /** The number of compilation units or classes the work was
+         *  done for, such as the number of classes attributed. */
+        public int getCount() {
+            return count;
+        }
+
+        void add(long wall, long cpu, long alloc) {
+            wallNanos += wall;
+            cpuNanos = (cpu < 0 || cpuNanos < 0) ? -1 : cpuNanos + cpu;
+            allocatedBytes = (alloc < 0 || allocatedBytes < 0) ? -1 : allocatedBytes + alloc;
+        }
+    }
+
+    /** A phase in progress on the compiler thread. */
+    private static class Frame {
+        final Phase phase;
+        final JavaFileObject unit;
+        final String className;
+        final boolean round;
+        final long wall, cpu, alloc;
+        long nestedWall, nestedCpu, nestedAlloc;
+
+        Frame(Phase phase, JavaFileObject unit, String className, boolean round,
+                long wall, long cpu, long alloc) {
+            this.phase = phase;
+            this.unit = unit;
+            this.className = className;
+            this.round = round;
+            this.wall = wall;
+            this.cpu = cpu;
+            this.alloc = alloc;
+        }
+    }
+
+    private final String output;
+    private final ThreadMXBean threads;
+    private final boolean measureCpu;
+    private final boolean measureAlloc;
+
+    private final long startWall;
+    /** The file manager whose zip reads are counted, or null. */
+    private final JavacFileManager fileManager;
+    private final long startZipEntries;
+    private final long startZipBytes;
+
+    private final ArrayList<Frame> frames = new ArrayList<Frame>();
+    private final Map<Phase, Figures> phases = new EnumMap<Phase, Figures>(Phase.class);
+    private final Map<String, Map<Phase, Figures>> units = new LinkedHashMap<String, Map<Phase, Figures>>();
+    private final Map<String, Map<Phase, Figures>> classes = new LinkedHashMap<String, Map<Phase, Figures>>();
+    private final ArrayList<Figures> rounds = new ArrayList<Figures>();
+
+    private int classCompletions;
+    private int sourceCompletions;
+    private int packageCompletions;
+    private long classBytesRead;
+    private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+    protected CompileStatistics(Context context, String output) {
+        context.put(statisticsKey, this);
+        this.output = output;
+        threads = ManagementFactory.getThreadMXBean();
+        measureCpu = threads.isCurrentThreadCpuTimeSupported();
+        boolean alloc = false;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                alloc = true;
+            }
+        }
+        measureAlloc = alloc;
+        startWall = System.nanoTime();
+        JavaFileManager fm = context.get(JavaFileManager.class);
+        fileManager = (fm instanceof JavacFileManager) ? (JavacFileManager) fm : null;
+        startZipEntries = (fileManager == null) ? 0 : fileManager.getZipEntriesRead();
+        startZipBytes = (fileManager == null) ? 0 : fileManager.getZipBytesRead();
+    }
+
+    /** Start a phase on the compiler thread. Every call must be matched
+     *  by a call of {@link #end}.
+     *  @param unit   the compilation unit worked on, or null
+     *  @param c      the class worked on, or null; figures are kept for
+     *                its outermost class
+     */
+    public void begin(Phase phase, JavaFileObject unit, ClassSymbol c) {
+        String className = (c == null) ? null : c.outermostClass().flatname.toString();
+        frames.add(new Frame(phase, unit, className, false,
+                             System.nanoTime(), cpuTime(), allocatedBytes()));
+    }
+
+    /** Start an annotation processing round. */
+    public void beginRound() {
+        frames.add(new Frame(Phase.PROCESS, null, null, true,
+                             System.nanoTime(), cpuTime(), allocatedBytes()));
+    }
+
+    /** End the innermost phase, charging it with the time and allocation
+     *  not charged to the phases nested in it.
+     */
+    public void end() {
+        Frame f = frames.remove(frames.size() - 1);
+        long wall = System.nanoTime() - f.wall;
+        long cpu = (f.cpu < 0) ? -1 : cpuTime() - f.cpu;
+        long alloc = (f.alloc < 0) ? -1 : allocatedBytes() - f.alloc;
+        if (!frames.isEmpty()) {
+            Frame outer = frames.get(frames.size() - 1);
+            outer.nestedWall += wall;
+            outer.nestedCpu += cpu;
+            outer.nestedAlloc += alloc;
+        }
+        wall -= f.nestedWall;
+        if (cpu >= 0)
+            cpu -= f.nestedCpu;
+        if (alloc >= 0)
+            alloc -= f.nestedAlloc;
+        record(f.phase, f.unit, f.className, wall, cpu, alloc, true);
+        if (f.round) {
+            Figures round = new Figures();
+            round.add(wall, cpu, alloc);
+            round.count = 1;
+            rounds.add(round);
+        }
+    }
+
+    /** Record figures for a unit measured on another thread, such as a
+     *  file parsed by -XDparallelParse. They are not added to the phase,
+     *  whose figures only cover the compiler thread.
+     */
+    public void recordUnit(Phase phase, JavaFileObject unit, long wall, long cpu, long alloc) {
+        record(phase, unit, null, wall, cpu, alloc, false);
+    }
+
+    private void record(Phase phase, JavaFileObject unit, String className,
+                        long wall, long cpu, long alloc, boolean inPhase) {
+        boolean counted = (unit != null || className != null);
+        if (inPhase)
+            add(phases, phase, wall, cpu, alloc, counted);
+        if (unit != null)
+            add(figuresFor(units, unit.getName()), phase, wall, cpu, alloc, true);
+        if (className != null)
+            add(figuresFor(classes, className), phase, wall, cpu, alloc, true);
+    }
+
+    private static Map<Phase, Figures> figuresFor(Map<String, Map<Phase, Figures>> map, String key) {
+        Map<Phase, Figures> m = map.get(key);
+        if (m == null) {
+            m = new EnumMap<Phase, Figures>(Phase.class);
+            map.put(key, m);
+        }
+        return m;
+    }
+
+    private static void add(Map<Phase, Figures> map, Phase phase,
+                            long wall, long cpu, long alloc, boolean counted) {
+        Figures f = map.get(phase);
+        if (f == null) {
+            f = new Figures();
+            map.put(phase, f);
+        }
+        f.add(wall, cpu, alloc);
+        if (counted)
+            f.count++;
+    }
+
+    /** Count a class completed by ClassReader from a class file. */
+    public void classRead(int bytes) {
+        classCompletions++;
+        classBytesRead += bytes;
+    }
+
+    /** Count a class completed by ClassReader from a source file. */
+    public void sourceCompleted() {
+        sourceCompletions++;
+    }
+
+    /** Count a package whose members were listed by ClassReader. */
+    public void packageCompleted() {
+        packageCompletions++;
+    }
+
+    /** Add to a named counter, such as the hits of a memo in Types. */
+    public void addCounter(String name, long value) {
+        Long old = counters.get(name);
+        counters.put(name, (old == null) ? value : old + value);
+    }
+
+    /** The value of a named counter, or 0 if it was never added to. */
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return (value == null) ? 0 : value;
+    }
+
+    /** The figures for a phase, or null if it has not run. */
+    public Figures getPhase(Phase phase) {
+        return phases.get(phase);
+    }
+
+    /** The figures for a phase of a compilation unit, or null. */
+    public Figures getUnit(JavaFileObject unit, Phase phase) {
+        Map<Phase, Figures> m = units.get(unit.getName());
+        return (m == null) ? null : m.get(phase);
+    }
+
+    /** The figures for a phase of a top level class, or null. */
+    public Figures getClass(ClassSymbol c, Phase phase) {
+        Map<Phase, Figures> m = classes.get(c.outermostClass().flatname.toString());
+        return (m == null) ? null : m.get(phase);
+    }
+
+    /** The figures for each annotation processing round so far. */
+    public List<Figures> getRounds() {
+        return Collections.unmodifiableList(rounds);
+    }
+
+    private long cpuTime() {
+        return measureCpu ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private long allocatedBytes() {
+        if (!measureAlloc)
+            return -1;
+        long id = Thread.currentThread().getId();
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(id);
+    }
+
+    /** Measure the current thread, for use with {@link #recordUnit}.
+     *  @return wall time, CPU time and allocated bytes
+     */
+    public long[] sample() {
+        return new long[] { System.nanoTime(), cpuTime(), allocatedBytes() };
+    }
+
+    /** Write the statistics as JSON to the file given by -XDstats=file,
+     *  or to the given writer if no file was given.
+     */
+    public void report(PrintWriter noticeWriter) throws IOException {
+        if (output.equals("stats")) {
+            write(noticeWriter);
+            noticeWriter.flush();
+        } else {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(output), "UTF-8"));
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+            if (out.checkError())
+                throw new IOException(output);
+        }
+    }
+
+    private void write(PrintWriter out) {
+        out.println("{");
+        out.println("  \"wallNanos\": " + (System.nanoTime() - startWall) + ",");
+        out.print("  \"phases\": ");
+        writePhases(out, phases, "  ");
+        out.println(",");
+        out.print("  \"rounds\": [");
+        String sep = "";
+        for (Figures f : rounds) {
+            out.print(sep);
+            writeFigures(out, f);
+            sep = ", ";
+        }
+        out.println("],");
+        out.print("  \"units\": ");
+        writeMap(out, units);
+        out.println(",");
+        out.print("  \"classes\": ");
+        writeMap(out, classes);
+        out.println(",");
+        out.println("  \"classReader\": { \"classCompletions\": " + classCompletions
+                + ", \"classBytesRead\": " + classBytesRead
+                + ", \"sourceCompletions\": " + sourceCompletions
+                + ", \"packageCompletions\": " + packageCompletions + " },");
+        out.print("  \"counters\": {");
+        sep = " ";
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            out.print(sep + quote(e.getKey()) + ": " + e.getValue());
+            sep = ", ";
+        }
+        out.println(counters.isEmpty() ? "}," : " },");
+        long zipEntries = (fileManager == null) ? 0 : fileManager.getZipEntriesRead() - startZipEntries;
+        long zipBytes = (fileManager == null) ? 0 : fileManager.getZipBytesRead() - startZipBytes;
+        out.println("  \"zip\": { \"entriesRead\": " + zipEntries
+                + ", \"bytesRead\": " + zipBytes + " }");
+        out.println("}");
+    }
+
+    private static void writeMap(PrintWriter out, Map<String, Map<Phase, Figures>> map) {
+        out.print("{");
+        String sep = "\n";
+        for (Map.Entry<String, Map<Phase, Figures>> e : map.entrySet()) {
+            out.print(sep + "    " + quote(e.getKey()) + ": ");
+            writePhases(out, e.getValue(), "    ");
+            sep = ",\n";
+        }
+        out.print(map.isEmpty() ? "}" : "\n  }");
+    }
+
+    private static void writePhases(PrintWriter out, Map<Phase, Figures> map, String indent) {
+        out.print("{");
+        String sep = "\n";
+        for (Map.Entry<Phase, Figures> e : map.entrySet()) {
+            out.print(sep + indent + "  \"" + e.getKey().key + "\": ");
+            writeFigures(out, e.getValue());
+            sep = ",\n";
+        }
+        out.print(map.isEmpty() ? "}" : "\n" + indent + "}");
+    }
+
+    private static void writeFigures(PrintWriter out, Figures f) {
+        out.print("{ \"wallNanos\": " + f.wallNanos
+                + ", \"cpuNanos\": " + f.cpuNanos
+                + ", \"allocatedBytes\": " + f.allocatedBytes
+                + ", \"count\": " + f.count + " }");
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
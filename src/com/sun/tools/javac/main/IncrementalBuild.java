@@ -0,0 +1,634 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import javax.tools.JavaFileObject;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.classfile.AccessFlags;
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPool;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.ConstantValue_attribute;
+import com.sun.tools.classfile.Dependencies;
+import com.sun.tools.classfile.Dependency;
+import com.sun.tools.classfile.Exceptions_attribute;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.InnerClasses_attribute;
+import com.sun.tools.classfile.Method;
+import com.sun.tools.classfile.Signature_attribute;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Options;
+
+import static com.sun.tools.javac.main.OptionName.*;
+
+/**
+ * The state of an incremental build, selected with
+ * "-XDincrementalState=<file>" together with "-d".
+ *
+ * <p>For each source file, the state file records its length, timestamp
+ * and checksum, and for each class compiled from it a fingerprint of its
+ * API, a fingerprint of its compile time constants, and the classes it
+ * refers to. A build then compiles in rounds, each with a fresh compiler:
+ * the first round compiles the sources that are new or have changed, and
+ * each later round compiles the sources that refer to a class whose API
+ * changed in the round before. The API of a class includes the members
+ * it inherits, so a class is taken to have changed when one of its
+ * supertypes in the build has. Class files of the other sources are used
+ * from the class output directory.
+ *
+ * <p>References to compile time constants are inlined and are not
+ * recorded in class files, so if a constant changes, all remaining
+ * sources are compiled. If the compiler options change, or there is no
+ * usable state file, all sources are compiled.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+class IncrementalBuild {
+    private static final String STATE_HEADER = "javac incremental state 2";
+
+    /** The number of rounds after which all remaining sources are compiled.
+     */
+    private static final int MAX_ROUNDS = 16;
+
+    /** What is known about a source file after it was compiled.
+     */
+    private static class SourceState {
+        long length;
+        long lastModified;
+        long checksum;
+        final Map<String, ClassState> classes = new LinkedHashMap<String, ClassState>();
+    }
+
+    /** What is known about a class after it was compiled.
+     */
+    private static class ClassState {
+        final String name;
+        String api;
+        String constants;
+        final Set<String> dependencies = new TreeSet<String>();
+        /** The superclass and interfaces. */
+        final Set<String> supertypes = new TreeSet<String>();
+
+        ClassState(String name) {
+            this.name = name;
+        }
+    }
+
+    private final File stateFile;
+    private final File classDir;
+    private final String optionsKey;
+
+    /** The state of the sources compiled so far, by absolute path.
+     */
+    private final Map<File, SourceState> state = new LinkedHashMap<File, SourceState>();
+
+    /** The sources of this build.
+     */
+    private final Set<File> sources = new LinkedHashSet<File>();
+
+    /** The sources to compile in the next round.
+     */
+    private final Set<File> round = new LinkedHashSet<File>();
+
+    /** The classes generated in the current round, by source file.
+     */
+    private final Map<File, Set<String>> generated = new HashMap<File, Set<String>>();
+
+    private int rounds;
+
+    IncrementalBuild(File stateFile, File classDir, String optionsKey) {
+        this.stateFile = stateFile;
+        this.classDir = classDir;
+        this.optionsKey = optionsKey;
+    }
+
+    /** Read the state of the previous build, and determine the sources to
+     *  compile in the first round. Class files of sources that are no
+     *  longer part of the build are deleted.
+     */
+    void start(java.util.List<File> files) {
+        for (File f : files)
+            sources.add(normalize(f));
+        if (!readState())
+            state.clear();
+
+        Set<String> changed = new HashSet<String>();
+        for (Iterator<Map.Entry<File, SourceState>> it = state.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<File, SourceState> e = it.next();
+            if (!sources.contains(e.getKey())) {
+                for (String c : e.getValue().classes.keySet()) {
+                    classFile(c).delete();
+                    changed.add(c);
+                }
+                it.remove();
+            }
+        }
+        for (File f : sources) {
+            if (isChanged(f))
+                round.add(f);
+        }
+        round.addAll(dependents(changed, round));
+    }
+
+    int getSourceCount() {
+        return sources.size();
+    }
+
+    boolean hasNextRound() {
+        return !round.isEmpty();
+    }
+
+    int getRoundSize() {
+        return round.size();
+    }
+
+    /** Prepare the compiler of the next round, and return the sources to
+     *  compile. The class output directory is put in front of the class
+     *  path, so that the classes of the other sources are found there.
+     */
+    List<File> startRound(Context context, Options options) {
+        rounds++;
+        generated.clear();
+
+        String cp = options.get(CLASSPATH);
+        if (cp == null) cp = System.getProperty("env.class.path");
+        if (cp == null && System.getProperty("application.home") == null)
+            cp = System.getProperty("java.class.path");
+        if (cp == null) cp = ".";
+        options.put(CLASSPATH, classDir.getPath() + File.pathSeparator + cp);
+
+        context.put(TaskListener.class, new TaskListener() {
+            public void started(TaskEvent e) { }
+            public void finished(TaskEvent e) {
+                if (e.getKind() == TaskEvent.Kind.GENERATE)
+                    generated(e.getSourceFile(), (ClassSymbol) e.getTypeElement());
+            }
+        });
+        return List.from(round.toArray(new File[round.size()]));
+    }
+
+    private void generated(JavaFileObject source, ClassSymbol c) {
+        File f = normalize(new File(source.toUri()));
+        Set<String> classes = generated.get(f);
+        if (classes == null)
+            generated.put(f, classes = new LinkedHashSet<String>());
+        classes.add(c.flatname.toString());
+    }
+
+    /** Record the classes generated in a round, and determine the sources
+     *  to compile in the next round. If the round failed, the sources
+     *  of the round are forgotten, so that they are compiled again by the
+     *  next build.
+     */
+    void finishRound(boolean ok) {
+        Set<File> compiled = new LinkedHashSet<File>(round);
+        for (File f : generated.keySet()) {
+            if (sources.contains(f))
+                compiled.add(f);
+        }
+        round.clear();
+
+        if (!ok || generated.isEmpty()) {
+            // the classes are either missing or were not generated at all
+            state.keySet().removeAll(compiled);
+            return;
+        }
+
+        Set<String> changed = new HashSet<String>();
+        boolean constantsChanged = false;
+        for (File f : compiled) {
+            SourceState prev = state.get(f);
+            SourceState s = new SourceState();
+            s.length = f.length();
+            s.lastModified = f.lastModified();
+            s.checksum = checksum(f);
+            Set<String> classes = generated.get(f);
+            for (String c : (classes == null ? Collections.<String>emptySet() : classes)) {
+                ClassState cs = readClass(c);
+                ClassState old = (prev == null) ? null : prev.classes.get(c);
+                if (cs == null) {
+                    // unreadable, assume the worst
+                    changed.add(c);
+                    constantsChanged = true;
+                    continue;
+                }
+                if (old == null || !old.api.equals(cs.api))
+                    changed.add(c);
+                if (old != null && !old.constants.equals(cs.constants))
+                    constantsChanged = true;
+                s.classes.put(c, cs);
+            }
+            if (prev != null) {
+                for (ClassState old : prev.classes.values()) {
+                    if (!s.classes.containsKey(old.name)) {
+                        classFile(old.name).delete();
+                        changed.add(old.name);
+                        constantsChanged |= !old.constants.equals(EMPTY_FINGERPRINT);
+                    }
+                }
+            }
+            state.put(f, s);
+        }
+
+        if (constantsChanged || rounds >= MAX_ROUNDS) {
+            round.addAll(sources);
+            round.removeAll(compiled);
+        } else {
+            round.addAll(dependents(changed, compiled));
+        }
+    }
+
+    /** Return the sources, other than the given ones, with a class that
+     *  refers to one of the given classes, or to one of their subtypes,
+     *  whose inherited members have changed with them.
+     */
+    private Set<File> dependents(Set<String> changed, Set<File> exclude) {
+        Set<File> result = new LinkedHashSet<File>();
+        if (changed.isEmpty())
+            return result;
+        Set<String> classes = withSubtypes(changed);
+        for (Map.Entry<File, SourceState> e : state.entrySet()) {
+            File f = e.getKey();
+            if (exclude.contains(f) || !sources.contains(f))
+                continue;
+            for (ClassState c : e.getValue().classes.values()) {
+                if (!Collections.disjoint(c.dependencies, classes)) {
+                    result.add(f);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the given classes together with all classes of this build
+     *  that have one of them as a direct or indirect supertype.
+     */
+    private Set<String> withSubtypes(Set<String> classes) {
+        Set<String> result = new HashSet<String>(classes);
+        boolean found;
+        do {
+            found = false;
+            for (SourceState s : state.values()) {
+                for (ClassState c : s.classes.values()) {
+                    if (!result.contains(c.name) && !Collections.disjoint(c.supertypes, result)) {
+                        result.add(c.name);
+                        found = true;
+                    }
+                }
+            }
+        } while (found);
+        return result;
+    }
+
+    private boolean isChanged(File f) {
+        SourceState s = state.get(f);
+        if (s == null)
+            return true;
+        long length = f.length();
+        long lastModified = f.lastModified();
+        if (length == s.length && lastModified == s.lastModified)
+            return false;
+        if (length != s.length || checksum(f) != s.checksum)
+            return true;
+        // touched, but not changed
+        s.lastModified = lastModified;
+        return false;
+    }
+
+    private File classFile(String className) {
+        return new File(classDir, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    private static File normalize(File f) {
+        return new File(f.getAbsoluteFile().toURI().normalize());
+    }
+
+    private static long checksum(File f) {
+        CRC32 crc = new CRC32();
+        try {
+            InputStream in = new FileInputStream(f);
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0)
+                    crc.update(buf, 0, n);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    /* ************************************************************************
+     * Class fingerprints
+     *************************************************************************/
+
+    private static final String EMPTY_FINGERPRINT = fingerprint(new ArrayList<String>());
+
+    /** Read a generated class file, and compute the fingerprints of its API
+     *  and its constants, and the classes it refers to. Private and
+     *  synthetic members are not part of the API.
+     */
+    private ClassState readClass(String className) {
+        try {
+            ClassFile cf = ClassFile.read(classFile(className));
+            ConstantPool cp = cf.constant_pool;
+            java.util.List<String> api = new ArrayList<String>();
+            java.util.List<String> constants = new ArrayList<String>();
+
+            StringBuilder sb = new StringBuilder("class ");
+            sb.append(cf.access_flags.flags & ~AccessFlags.ACC_SUPER).append(' ');
+            sb.append(cf.super_class == 0 ? "" : cf.getSuperclassName());
+            for (int i = 0; i < cf.interfaces.length; i++)
+                sb.append(' ').append(cf.getInterfaceName(i));
+            appendAttributes(sb, cf.attributes, cp);
+            api.add(sb.toString());
+
+            InnerClasses_attribute inner = (InnerClasses_attribute) cf.getAttribute(Attribute.InnerClasses);
+            if (inner != null) {
+                for (InnerClasses_attribute.Info info : inner.classes) {
+                    if (info.inner_name_index != 0)
+                        api.add("inner " + info.inner_class_access_flags.flags + " "
+                                + info.getInnerClassInfo(cp).getName());
+                }
+            }
+
+            for (Field f : cf.fields) {
+                if (isAPI(f.access_flags))
+                    api.add(member("field", f.access_flags, f.getName(cp),
+                            f.descriptor.getValue(cp), f.attributes, cp));
+                ConstantValue_attribute cv = (ConstantValue_attribute) f.attributes.get(Attribute.ConstantValue);
+                if (cv != null)
+                    constants.add(f.getName(cp) + "=" + constantValue(cp, cv.constantvalue_index));
+            }
+            for (Method m : cf.methods) {
+                if (isAPI(m.access_flags))
+                    api.add(member("method", m.access_flags, m.getName(cp),
+                            m.descriptor.getValue(cp), m.attributes, cp));
+            }
+
+            ClassState cs = new ClassState(className);
+            if (cf.super_class != 0)
+                cs.supertypes.add(cf.getSuperclassName().replace('/', '.'));
+            for (int i = 0; i < cf.interfaces.length; i++)
+                cs.supertypes.add(cf.getInterfaceName(i).replace('/', '.'));
+            cs.api = fingerprint(api);
+            cs.constants = fingerprint(constants);
+            for (Dependency d : Dependencies.getClassDependencyFinder().findDependencies(cf)) {
+                String target = d.getTarget().getClassName().replace('/', '.');
+                if (!target.equals(className))
+                    cs.dependencies.add(target);
+            }
+            return cs;
+        } catch (IOException e) {
+            return null;
+        } catch (ConstantPoolException e) {
+            return null;
+        } catch (Dependencies.ClassFileError e) {
+            return null;
+        }
+    }
+
+    private static boolean isAPI(AccessFlags flags) {
+        return !flags.is(AccessFlags.ACC_PRIVATE) && !flags.is(AccessFlags.ACC_SYNTHETIC);
+    }
+
+    private static String member(String kind, AccessFlags flags, String name, String descriptor,
+                                 com.sun.tools.classfile.Attributes attrs, ConstantPool cp)
+            throws ConstantPoolException {
+        StringBuilder sb = new StringBuilder(kind);
+        sb.append(' ').append(flags.flags).append(' ').append(name).append(' ').append(descriptor);
+        appendAttributes(sb, attrs, cp);
+        return sb.toString();
+    }
+
+    /** Append the attributes of a class or member that are part of its API.
+     */
+    private static void appendAttributes(StringBuilder sb, com.sun.tools.classfile.Attributes attrs,
+                                         ConstantPool cp) throws ConstantPoolException {
+        Signature_attribute sig = (Signature_attribute) attrs.get(Attribute.Signature);
+        if (sig != null)
+            sb.append(" signature ").append(sig.getSignature(cp));
+        Exceptions_attribute exc = (Exceptions_attribute) attrs.get(Attribute.Exceptions);
+        if (exc != null) {
+            for (int i = 0; i < exc.number_of_exceptions; i++)
+                sb.append(" throws ").append(exc.getException(i, cp));
+        }
+        if (attrs.get(Attribute.Deprecated) != null)
+            sb.append(" deprecated");
+    }
+
+    private static String constantValue(ConstantPool cp, int index) throws ConstantPoolException {
+        ConstantPool.CPInfo info = cp.get(index);
+        switch (info.getTag()) {
+            case ConstantPool.CONSTANT_Integer:
+                return "I" + ((ConstantPool.CONSTANT_Integer_info) info).value;
+            case ConstantPool.CONSTANT_Long:
+                return "J" + ((ConstantPool.CONSTANT_Long_info) info).value;
+            case ConstantPool.CONSTANT_Float:
+                return "F" + Float.floatToIntBits(((ConstantPool.CONSTANT_Float_info) info).value);
+            case ConstantPool.CONSTANT_Double:
+                return "D" + Double.doubleToLongBits(((ConstantPool.CONSTANT_Double_info) info).value);
+            case ConstantPool.CONSTANT_String:
+                return "S" + ((ConstantPool.CONSTANT_String_info) info).getString();
+            default:
+                return "?" + info;
+        }
+    }
+
+    /** Return a digest of the given lines, independent of their order.
+     */
+    private static String fingerprint(java.util.List<String> lines) {
+        Collections.sort(lines);
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            for (String line : lines) {
+                md.update(line.getBytes("UTF-8"));
+                md.update((byte) '\n');
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest())
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /* ************************************************************************
+     * State file
+     *************************************************************************/
+
+    /*
+     * The state file is a text file:
+     *
+     *   javac incremental state 2
+     *   options <key>
+     *   source <length> <lastModified> <checksum> <path>
+     *   class <name> <api fingerprint> <constants fingerprint>
+     *   dep <name>
+     *   super <name>
+     *
+     * Each class belongs to the source before it, and each dependency and
+     * supertype to the class before it.  Only dependencies and supertypes
+     * that are classes of the build are written.  Version 2 added the
+     * super lines, so that users of inherited members are recompiled when
+     * a supertype changes; a version 1 file is not read, and causes a full
+     * build.
+     */
+
+    /** Read the state file. Returns false if there is no state file, or it
+     *  cannot be used.
+     */
+    private boolean readState() {
+        if (!stateFile.exists())
+            return false;
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+            try {
+                if (!STATE_HEADER.equals(in.readLine())
+                        || !("options " + optionsKey).equals(in.readLine()))
+                    return false;
+                SourceState source = null;
+                ClassState c = null;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("source ")) {
+                        String[] words = line.split(" ", 5);
+                        source = new SourceState();
+                        source.length = Long.parseLong(words[1]);
+                        source.lastModified = Long.parseLong(words[2]);
+                        source.checksum = Long.parseLong(words[3]);
+                        state.put(new File(words[4]), source);
+                    } else if (line.startsWith("class ")) {
+                        String[] words = line.split(" ");
+                        c = new ClassState(words[1]);
+                        c.api = words[2];
+                        c.constants = words[3];
+                        source.classes.put(c.name, c);
+                    } else if (line.startsWith("dep ")) {
+                        c.dependencies.add(line.substring(4));
+                    } else if (line.startsWith("super ")) {
+                        c.supertypes.add(line.substring(6));
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            // malformed state file
+            return false;
+        }
+    }
+
+    /** Write the state file. Only dependencies on classes and supertypes
+     *  of this build are recorded.
+     */
+    void writeState() throws IOException {
+        Set<String> buildClasses = new HashSet<String>();
+        for (SourceState s : state.values())
+            buildClasses.addAll(s.classes.keySet());
+
+        File dir = stateFile.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(stateFile.getName(), ".tmp", dir);
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            try {
+                out.println(STATE_HEADER);
+                out.println("options " + optionsKey);
+                for (Map.Entry<File, SourceState> e : state.entrySet()) {
+                    SourceState s = e.getValue();
+                    out.println("source " + s.length + " " + s.lastModified + " " + s.checksum
+                            + " " + e.getKey().getPath());
+                    for (ClassState c : s.classes.values()) {
+                        out.println("class " + c.name + " " + c.api + " " + c.constants);
+                        for (String d : c.dependencies) {
+                            if (buildClasses.contains(d))
+                                out.println("dep " + d);
+                        }
+                        for (String t : c.supertypes) {
+                            if (buildClasses.contains(t))
+                                out.println("super " + t);
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (out.checkError())
+                throw new IOException(tmp.getPath());
+            if (!tmp.renameTo(stateFile)) {
+                stateFile.delete();
+                if (!tmp.renameTo(stateFile))
+                    throw new IOException(stateFile.getPath());
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -35,6 +35,10 @@ import java.util.MissingResourceException;
 import java.util.Queue;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -386,6 +390,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
 
         verboseCompilePolicy = options.isSet("verboseCompilePolicy");
+        printNameTableStats = options.isSet("nameTableStats");
+        stats = CompileStatistics.instance(context);
 
         if (attrParseOnly)
             compilePolicy = CompilePolicy.ATTR_ONLY;
@@ -478,6 +484,17 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
      */
     public boolean verboseCompilePolicy;
 
+    /**
+     * Report the size of the name table when the compiler is closed,
+     * if the table keeps statistics.
+     */
+    public boolean printNameTableStats;
+
+    /**
+     * Time and allocation figures for -XDstats, or null.
+     */
+    protected CompileStatistics stats;
+
     /**
      * Policy of how far to continue processing. null means until first
      * error.
@@ -594,9 +611,16 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, filename);
                 taskListener.started(e);
             }
-            Parser parser = parserFactory.newParser(content, keepComments(), genEndPos, lineDebugInfo);
-            // 据content创建一颗抽象语法树
-            tree = parser.parseCompilationUnit();
+            if (stats != null)
+                stats.begin(CompileStatistics.Phase.PARSE, filename, null);
+            try {
+                Parser parser = parserFactory.newParser(content, keepComments(), genEndPos, lineDebugInfo);
+                // 据content创建一颗抽象语法树
+                tree = parser.parseCompilationUnit();
+            } finally {
+                if (stats != null)
+                    stats.end();
+            }
             if (verbose) {
                 log.printVerbose("parsing.done", Long.toString(elapsed(msec)));
             }
@@ -638,6 +662,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             JCTree.JCCompilationUnit t = parse(filename, readSource(filename));
             if (t.endPositions != null)
                 log.setEndPosTable(filename, t.endPositions);
+            if (t.lineMap != null)
+                log.setLineMap(filename, t.lineMap);
             return t;
         } finally {
             log.useSource(prev);
@@ -718,7 +744,7 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             // 调用gen.genClass()方法会初始化Gen类中定义的一些变量，该方法返回true表示初始化成功，
             if (gen.genClass(env, cdef) && (errorCount() == 0))
                 // 然后调用ClassWriter对象writer的writeClass()方法向Class文件写入字节码内容
-                return writer.writeClass(cdef.sym);
+                return writeClass(env, cdef);
         } catch (ClassWriter.PoolOverflow ex) {
             log.error(cdef.pos(), "limit.pool");
         } catch (ClassWriter.StringOverflow ex) {
@@ -730,6 +756,18 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         return null;
     }
 
+    private JavaFileObject writeClass(Env<AttrContext> env, JCClassDecl cdef)
+        throws IOException, ClassWriter.PoolOverflow, ClassWriter.StringOverflow {
+        if (stats == null)
+            return writer.writeClass(cdef.sym);
+        stats.begin(CompileStatistics.Phase.WRITE, env.toplevel.sourcefile, cdef.sym);
+        try {
+            return writer.writeClass(cdef.sym);
+        } finally {
+            stats.end();
+        }
+    }
+
     /** Complete compiling a source file that has been accessed
      *  by the class file reader.
      *  @param c          The class the source file of which needs to be compiled.
@@ -745,6 +783,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         JavaFileObject filename = c.classfile;
         JavaFileObject prev = log.useSource(filename);
 
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.PARSE, null, null);
         try {
             // 调用parse()方法进行词法处理后生成JCCompilationUnit对象
             tree = parse(filename, filename.getCharContent(false));
@@ -753,6 +793,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             tree = make.TopLevel(List.<JCTree.JCAnnotation>nil(), null, List.<JCTree>nil());
         } finally {
             log.useSource(prev);
+            if (stats != null)
+                stats.end();
         }
 
         if (taskListener != null) {
@@ -760,7 +802,14 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             taskListener.started(e);
         }
         // 调用Enter对象enter的complete()方法完成对依赖文件的处理
-        enter.complete(List.of(tree), c);
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.ENTER, filename, null);
+        try {
+            enter.complete(List.of(tree), c);
+        } finally {
+            if (stats != null)
+                stats.end();
+        }
 
         if (taskListener != null) {
             TaskEvent e = new TaskEvent(TaskEvent.Kind.ENTER, tree);
@@ -885,8 +934,14 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 break;
 
             case BY_TODO:
-                while (!todo.isEmpty())
-                    generate(desugar(flow(attribute(todo.remove()))));
+                if (options.isSet("parallelWriters"))
+                    writer.startBackgroundWriting(parallelWriters());
+                try {
+                    while (!todo.isEmpty())
+                        generate(desugar(flow(attribute(todo.remove()))));
+                } finally {
+                    writer.finishBackgroundWriting();
+                }
                 break;
 
             default:
@@ -910,6 +965,18 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
     }
 
+    /** The number of threads writing class files under the default
+     *  {@code BY_TODO} policy, as set by -XDparallelWriters.  Attribution,
+     *  flow analysis, desugaring and code generation share unsynchronized
+     *  compiler state, so they stay on the compiler thread; only writing
+     *  the class files is moved to other threads.  With a task listener,
+     *  each class file is written before the GENERATE task is reported
+     *  as finished, so little is gained.
+     */
+    private int parallelWriters() {
+        return WorkerThreads.count(options, "parallelWriters");
+    }
+
     private List<JCClassDecl> rootClasses;
 
     /**
@@ -920,15 +987,175 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
            return List.nil();
 
         //parse all files
-        ListBuffer<JCCompilationUnit> trees = lb();
+        ListBuffer<JavaFileObject> files = lb();
         Set<JavaFileObject> filesSoFar = new HashSet<JavaFileObject>();
         for (JavaFileObject fileObject : fileObjects) {
             if (!filesSoFar.contains(fileObject)) {
                 filesSoFar.add(fileObject);
+                files.append(fileObject);
+            }
+        }
+        if (files.size() > 1
+                && options.isSet("parallelParse")
+                && names.table instanceof ConcurrentNameTable)
+            return parseInParallel(files.toList(), WorkerThreads.count(options, "parallelParse"));
+
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.PARSE, null, null);
+        try {
+            ListBuffer<JCCompilationUnit> trees = lb();
+            for (JavaFileObject fileObject : files)
                 trees.append(parse(fileObject));
+            return trees.toList();
+        } finally {
+            if (stats != null)
+                stats.end();
+        }
+    }
+
+    /** Parse files on a pool of threads, as requested by -XDparallelParse.
+     *  Sources are read on this thread, then each file is parsed by a
+     *  forked parser factory whose log defers its diagnostics. Those
+     *  diagnostics, the end position tables and the PARSE task events are
+     *  handled here in input order, so the result is the same as parsing
+     *  the files one after another. The name table must be a
+     *  ConcurrentNameTable, which -XDparallelParse selects.
+     */
+    private List<JCCompilationUnit> parseInParallel(List<JavaFileObject> files, int nthreads) {
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.PARSE, null, null);
+        ExecutorService parsers = WorkerThreads.newPool(nthreads, "parser");
+        try {
+            ListBuffer<ParseTask> tasks = lb();
+            for (JavaFileObject file : files) {
+                ParseTask task = new ParseTask(file, log.deferredCopy(file));
+                task.read();
+                if (task.content != null)
+                    task.tree = parsers.submit(task);
+                tasks.append(task);
+            }
+            ListBuffer<JCCompilationUnit> trees = lb();
+            for (ParseTask task : tasks)
+                trees.append(task.finish());
+            return trees.toList();
+        } finally {
+            parsers.shutdownNow();
+            if (stats != null)
+                stats.end();
+        }
+    }
+
+    /** A file being parsed by parseInParallel.
+     */
+    private class ParseTask implements Callable<JCCompilationUnit> {
+        final JavaFileObject file;
+        final Log fileLog;
+        final ParserFactory fileParserFactory;
+        CharSequence content;
+        Future<JCCompilationUnit> tree;
+        long msec;
+        long[] figures;
+
+        ParseTask(JavaFileObject file, Log fileLog) {
+            this.file = file;
+            this.fileLog = fileLog;
+            this.fileParserFactory = parserFactory.fork(fileLog);
+        }
+
+        /** Read the source on the compiler thread, since file managers
+         *  are not thread safe. Diagnostics about reading the file are
+         *  kept with those about parsing it.
+         */
+        void read() {
+            boolean prevDefer = log.deferDiagnostics;
+            Queue<JCDiagnostic> prevDeferred = log.deferredDiagnostics;
+            log.deferDiagnostics = true;
+            log.deferredDiagnostics = fileLog.deferredDiagnostics;
+            JavaFileObject prev = log.useSource(file);
+            try {
+                content = readSource(file);
+            } finally {
+                log.useSource(prev);
+                log.deferDiagnostics = prevDefer;
+                log.deferredDiagnostics = prevDeferred;
+            }
+            if (content != null)
+                fileLog.currentSource().setContent(content);
+        }
+
+        public JCCompilationUnit call() {
+            long start = now();
+            long[] sample = (stats == null) ? null : stats.sample();
+            Parser parser = fileParserFactory.newParser(content, keepComments(), genEndPos, lineDebugInfo);
+            JCCompilationUnit t = parser.parseCompilationUnit();
+            msec = elapsed(start);
+            if (sample != null) {
+                long[] now = stats.sample();
+                figures = new long[] { now[0] - sample[0],
+                                       sample[1] < 0 ? -1 : now[1] - sample[1],
+                                       sample[2] < 0 ? -1 : now[2] - sample[2] };
+            }
+            return t;
+        }
+
+        /** Wait for the tree, and report it as parse(file) would have done.
+         */
+        JCCompilationUnit finish() {
+            if (content == null) {
+                reportDiagnostics();
+                JCCompilationUnit t = make.TopLevel(List.<JCTree.JCAnnotation>nil(),
+                                                    null, List.<JCTree>nil());
+                t.sourcefile = file;
+                return t;
+            }
+            if (verbose) {
+                log.printVerbose("parsing.started", file);
+            }
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, file);
+                taskListener.started(e);
+            }
+            JCCompilationUnit t;
+            try {
+                t = tree.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new Abort(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                else if (cause instanceof Error)
+                    throw (Error)cause;
+                else
+                    throw new Abort(cause);
+            } finally {
+                fileLog.currentSource().setContent(null);
+            }
+            reportDiagnostics();
+            if (verbose) {
+                log.printVerbose("parsing.done", Long.toString(msec));
+            }
+            t.sourcefile = file;
+            if (figures != null)
+                stats.recordUnit(CompileStatistics.Phase.PARSE, file,
+                                 figures[0], figures[1], figures[2]);
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, t);
+                taskListener.finished(e);
             }
+            if (t.endPositions != null)
+                log.setEndPosTable(file, t.endPositions);
+            if (t.lineMap != null)
+                log.setLineMap(file, t.lineMap);
+            return t;
+        }
+
+        private void reportDiagnostics() {
+            JCDiagnostic d;
+            while ((d = fileLog.deferredDiagnostics.poll()) != null)
+                log.report(d);
         }
-        return trees.toList();
     }
 
     /**
@@ -945,7 +1172,14 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             }
         }
 
-        enter.main(roots);
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.ENTER, null, null);
+        try {
+            enter.main(roots);
+        } finally {
+            if (stats != null)
+                stats.end();
+        }
 
         if (taskListener != null) {
             for (JCCompilationUnit unit: roots) {
@@ -1206,6 +1440,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             taskListener.started(e);
         }
 
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.ATTR, env.toplevel.sourcefile, env.enclClass.sym);
         JavaFileObject prev = log.useSource(
                                   env.enclClass.sym.sourcefile != null ?
                                   env.enclClass.sym.sourcefile :
@@ -1221,6 +1457,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
         finally {
             log.useSource(prev);
+            if (stats != null)
+                stats.end();
         }
 
         return env;
@@ -1264,6 +1502,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
 
             if (verboseCompilePolicy)
                 printNote("[flow " + env.enclClass.sym + "]");
+            if (stats != null)
+                stats.begin(CompileStatistics.Phase.FLOW, env.toplevel.sourcefile, env.enclClass.sym);
             JavaFileObject prev = log.useSource(
                                                 env.enclClass.sym.sourcefile != null ?
                                                 env.enclClass.sym.sourcefile :
@@ -1281,6 +1521,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             }
             finally {
                 log.useSource(prev);
+                if (stats != null)
+                    stats.end();
             }
         }
         finally {
@@ -1366,6 +1608,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         if (verboseCompilePolicy)
             printNote("[desugar " + env.enclClass.sym + "]");
 
+        if (stats != null)
+            stats.begin(CompileStatistics.Phase.DESUGAR, env.toplevel.sourcefile, env.enclClass.sym);
         JavaFileObject prev = log.useSource(env.enclClass.sym.sourcefile != null ?
                                   env.enclClass.sym.sourcefile :
                                   env.toplevel.sourcefile);
@@ -1438,6 +1682,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         }
         finally {
             log.useSource(prev);
+            if (stats != null)
+                stats.end();
         }
 
     }
@@ -1472,6 +1718,8 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 taskListener.started(e);
             }
 
+            if (stats != null)
+                stats.begin(CompileStatistics.Phase.GENERATE, env.toplevel.sourcefile, cdef.sym);
             JavaFileObject prev = log.useSource(env.enclClass.sym.sourcefile != null ?
                                       env.enclClass.sym.sourcefile :
                                       env.toplevel.sourcefile);
@@ -1490,9 +1738,14 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 return;
             } finally {
                 log.useSource(prev);
+                if (stats != null)
+                    stats.end();
             }
 
             if (taskListener != null) {
+                // a listener may look at the class file when it is told
+                // that it has been generated
+                writer.completePendingWrites();
                 TaskEvent e = new TaskEvent(TaskEvent.Kind.GENERATE, env.toplevel, cdef.sym);
                 taskListener.finished(e);
             }
@@ -1605,14 +1858,36 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         transTypes = null;
         lower = null;
         annotate = null;
+        if (stats != null && types != null) {
+            for (Map.Entry<String, Long> e : types.getMemoStatistics().entrySet())
+                stats.addCounter("types." + e.getKey(), e.getValue());
+        }
         types = null;
 
+        if (stats != null && disposeNames) {
+            try {
+                stats.report(log.noticeWriter);
+            } catch (IOException e) {
+                log.error("stats.cant.write", options.get("stats"), e.getMessage());
+            }
+            // a compiler that is its own delegate is closed twice
+            stats = null;
+        }
+
+        // intermediate round compilers also write to the archive, so it is
+        // only finished when the compilation as a whole is done
+        if (disposeNames && fileManager instanceof JavacFileManager)
+            ((JavacFileManager) fileManager).finishOutputArchive();
+
         log.flush();
         try {
             fileManager.flush();
         } catch (IOException e) {
             throw new Abort(e);
         } finally {
+            if (names != null && printNameTableStats
+                    && names.table instanceof ConcurrentNameTable)
+                printNote(((ConcurrentNameTable) names.table).getStatistics());
             if (names != null && disposeNames)
                 names.dispose();
             names = null;
@@ -39,6 +39,7 @@ import javax.annotation.processing.Processor;
 import com.sun.tools.javac.code.Source;
 import com.sun.tools.javac.file.CacheFSInfo;
 import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.OutputArchive;
 import com.sun.tools.javac.jvm.Target;
 import com.sun.tools.javac.main.JavacOption.Option;
 import com.sun.tools.javac.main.RecognizedOptions.OptionHelper;
@@ -302,6 +303,15 @@ public class Main {
             if (value == null)
                 return true;
             File file = new File(value);
+            if (optName == D && OutputArchive.isArchiveName(file)) {
+                // classes are written to a jar or zip file, created as needed
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null && !parent.isDirectory()) {
+                    error("err.dir.not.found", parent);
+                    return false;
+                }
+                return true;
+            }
             if (!file.exists()) {
                 error("err.dir.not.found", value);
                 return false;
@@ -327,7 +337,13 @@ public class Main {
         int result = compile(args, context);
         if (fileManager instanceof JavacFileManager) {
             // A fresh context was created above, so jfm must be a JavacFileManager
+            Log log = ((JavacFileManager)fileManager).log;
+            int nerrors = log.nerrors;
+            // closing completes a class output archive, which can fail
             ((JavacFileManager)fileManager).close();
+            log.flush();
+            if (log.nerrors > nerrors && result == EXIT_OK)
+                result = EXIT_ERROR;
         }
         return result;
     }
@@ -388,6 +404,14 @@ public class Main {
                 return EXIT_SYSERR;
             }
 
+            IncrementalBuild incremental = context.get(IncrementalBuild.class);
+            if (incremental != null) {
+                // a round of an incremental build, see compileIncrementally
+                files = incremental.startRound(context, options);
+            } else if (options.isSet("incrementalState") && fileObjects.isEmpty()) {
+                return compileIncrementally(args, files);
+            }
+
             boolean forceStdOut = options.isSet("stdout");
             if (forceStdOut) {
                 out.flush();
@@ -480,6 +504,60 @@ public class Main {
         return EXIT_OK;
     }
 
+    /** Compile the given source files as an incremental build. Each round
+     *  of the build is compiled with a fresh context; see IncrementalBuild.
+     */
+    int compileIncrementally(String[] args, List<File> files) throws IOException {
+        String classDir = options.get(D);
+        if (classDir == null) {
+            error("err.incremental.no.classdir");
+            return EXIT_CMDERR;
+        }
+        if (OutputArchive.isArchiveName(new File(classDir))) {
+            error("err.incremental.archive.classdir");
+            return EXIT_CMDERR;
+        }
+
+        // the state of a build is only valid for the same options
+        StringBuilder key = new StringBuilder();
+        for (String arg : CommandLine.parse(args)) {
+            if (!files.contains(new File(arg)))
+                key.append(arg).append('\0');
+        }
+
+        IncrementalBuild build = new IncrementalBuild(new File(options.get("incrementalState")),
+                new File(classDir), Integer.toHexString(key.toString().hashCode()));
+        build.start(files);
+        boolean verbose = options.isSet(VERBOSE);
+        int result = EXIT_OK;
+        while (build.hasNextRound()) {
+            if (verbose)
+                Log.printLines(out, getLocalizedString("msg.incremental.round",
+                        build.getRoundSize(), build.getSourceCount()));
+            Context context = new Context();
+            JavacFileManager.preRegister(context);
+            context.put(IncrementalBuild.class, build);
+            Main round = new Main(ownName, out);
+            result = round.compile(args, context);
+            if (round.fileManager instanceof JavacFileManager)
+                ((JavacFileManager) round.fileManager).close();
+            build.finishRound(result == EXIT_OK);
+            if (result != EXIT_OK)
+                break;
+        }
+
+        try {
+            build.writeState();
+        } catch (IOException e) {
+            Log.printLines(out, ownName + ": " +
+                           getLocalizedString("err.error.writing.file",
+                                              options.get("incrementalState"), e));
+            if (result == EXIT_OK)
+                result = EXIT_SYSERR;
+        }
+        return result;
+    }
+
     /** Print a message reporting an internal error.
      */
     void bugMessage(Throwable ex) {
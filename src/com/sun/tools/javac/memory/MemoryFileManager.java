@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.memory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.BaseFileManager;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.ListBuffer;
+
+import static javax.tools.StandardLocation.*;
+
+/**
+ *  A JavaFileManager that keeps source files and compiler output in memory,
+ *  for programs that compile generated code and load the result at once.
+ *
+ *  <p>Source files are given as text with {@link #addSource}, and are the
+ *  source path. Class files and other files written by the compiler are
+ *  held as byte arrays, and are read back from the class output location,
+ *  and from the class path, so that later compilations can use them.
+ *  {@link #getClassLoader getClassLoader(CLASS_OUTPUT)} returns a class
+ *  loader that defines classes directly from them.
+ *
+ *  <p>The platform class path, the rest of the class path, and the
+ *  annotation processor path are read through a JavacFileManager, with the
+ *  usual options and defaults, so archives on them are read through the
+ *  archive index that is shared by all compilations in the VM. A single
+ *  MemoryFileManager can be used for any number of compilations, and keeps
+ *  those archives open until it is closed.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class MemoryFileManager extends BaseFileManager implements JavaFileManager {
+
+    /** The file manager for files that are not in memory.
+     */
+    private final JavacFileManager fileManager;
+
+    /** The files in memory, by location, then by package.
+     */
+    private final Map<Location, TreeMap<String, Map<String, MemoryFileObject>>> files =
+        new HashMap<Location, TreeMap<String, Map<String, MemoryFileObject>>>();
+
+    /**
+     * Create a MemoryFileManager using a given context, optionally registering
+     * it as the JavaFileManager for that context.
+     */
+    public MemoryFileManager(Context context, boolean register, Charset charset) {
+        super(charset);
+        if (register)
+            context.put(JavaFileManager.class, this);
+        fileManager = new JavacFileManager(context, false, charset);
+        setContext(context);
+    }
+
+    /**
+     * Add a source file for a class to the source path, replacing any
+     * earlier one for the same class.
+     * @return the file, to be given as a compilation unit
+     */
+    public JavaFileObject addSource(String className, CharSequence text) {
+        nullCheck(text);
+        String path = className.replace('.', '/') + Kind.SOURCE.extension;
+        MemoryFileObject fo = new MemoryFileObject(this, SOURCE_PATH, path, text);
+        put(fo);
+        return fo;
+    }
+
+    /**
+     * Get the bytes of a class written by the compiler, or null if there
+     * is none.
+     */
+    public byte[] getClassBytes(String className) {
+        MemoryFileObject fo = get(CLASS_OUTPUT, className.replace('.', '/') + Kind.CLASS.extension);
+        return (fo == null ? null : fo.getBytes());
+    }
+
+    @Override
+    public boolean isDefaultBootClassPath() {
+        return fileManager.isDefaultBootClassPath();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Files in memory">
+
+    private static boolean inMemory(Location location) {
+        return location == SOURCE_PATH || location.isOutputLocation();
+    }
+
+    private static String packageOf(String path) {
+        int sep = path.lastIndexOf('/');
+        return (sep < 0 ? "" : path.substring(0, sep).replace('/', '.'));
+    }
+
+    private synchronized void put(MemoryFileObject fo) {
+        TreeMap<String, Map<String, MemoryFileObject>> packages = files.get(fo.location);
+        if (packages == null) {
+            packages = new TreeMap<String, Map<String, MemoryFileObject>>();
+            files.put(fo.location, packages);
+        }
+        String pkg = packageOf(fo.path);
+        Map<String, MemoryFileObject> pkgFiles = packages.get(pkg);
+        if (pkgFiles == null) {
+            pkgFiles = new LinkedHashMap<String, MemoryFileObject>();
+            packages.put(pkg, pkgFiles);
+        }
+        pkgFiles.put(fo.path, fo);
+    }
+
+    private synchronized MemoryFileObject get(Location location, String path) {
+        TreeMap<String, Map<String, MemoryFileObject>> packages = files.get(location);
+        if (packages == null)
+            return null;
+        Map<String, MemoryFileObject> pkgFiles = packages.get(packageOf(path));
+        return (pkgFiles == null ? null : pkgFiles.get(path));
+    }
+
+    private synchronized void list(Location location, String packageName,
+            Set<Kind> kinds, boolean recurse, ListBuffer<JavaFileObject> results) {
+        TreeMap<String, Map<String, MemoryFileObject>> packages = files.get(location);
+        if (packages == null)
+            return;
+        Collection<Map<String, MemoryFileObject>> selected;
+        if (recurse && packageName.length() == 0) {
+            selected = packages.values();
+        } else {
+            selected = new ArrayList<Map<String, MemoryFileObject>>();
+            if (packages.containsKey(packageName))
+                selected.add(packages.get(packageName));
+            // subpackages of "p" sort between "p." and "p/"
+            if (recurse)
+                selected.addAll(packages.subMap(packageName + ".", packageName + "/").values());
+        }
+        for (Map<String, MemoryFileObject> pkgFiles : selected) {
+            for (MemoryFileObject fo : pkgFiles.values()) {
+                if (kinds.contains(fo.getKind()) && (fo.location == SOURCE_PATH || fo.getBytes() != null))
+                    results.append(fo);
+            }
+        }
+    }
+
+    /** Called when a file has been written.
+     */
+    void written(MemoryFileObject fo) {
+        put(fo);
+    }
+
+    synchronized boolean delete(MemoryFileObject fo) {
+        TreeMap<String, Map<String, MemoryFileObject>> packages = files.get(fo.location);
+        Map<String, MemoryFileObject> pkgFiles = (packages == null ? null : packages.get(packageOf(fo.path)));
+        if (pkgFiles == null || pkgFiles.get(fo.path) != fo)
+            return false;
+        pkgFiles.remove(fo.path);
+        return true;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="JavaFileManager">
+
+    public ClassLoader getClassLoader(Location location) {
+        nullCheck(location);
+        if (location == CLASS_OUTPUT)
+            return new OutputClassLoader(Thread.currentThread().getContextClassLoader());
+        return fileManager.getClassLoader(location);
+    }
+
+    public Iterable<JavaFileObject> list(Location location,
+                                         String packageName,
+                                         Set<Kind> kinds,
+                                         boolean recurse)
+        throws IOException
+    {
+        nullCheck(location);
+        nullCheck(packageName);
+        nullCheck(kinds);
+        ListBuffer<JavaFileObject> results = new ListBuffer<JavaFileObject>();
+        if (inMemory(location)) {
+            list(location, packageName, kinds, recurse, results);
+        } else {
+            for (JavaFileObject fo : fileManager.list(location, packageName, kinds, recurse))
+                results.append(fo);
+            if (location == CLASS_PATH)
+                list(CLASS_OUTPUT, packageName, kinds, recurse, results);
+        }
+        return results.toList();
+    }
+
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        nullCheck(file);
+        nullCheck(location);
+        if (file instanceof MemoryFileObject)
+            return ((MemoryFileObject) file).getBinaryName();
+        return fileManager.inferBinaryName(location, file);
+    }
+
+    public boolean isSameFile(FileObject a, FileObject b) {
+        nullCheck(a);
+        nullCheck(b);
+        if (a instanceof MemoryFileObject || b instanceof MemoryFileObject)
+            return a == b;
+        return fileManager.isSameFile(a, b);
+    }
+
+    public boolean hasLocation(Location location) {
+        nullCheck(location);
+        return inMemory(location) || fileManager.hasLocation(location);
+    }
+
+    public JavaFileObject getJavaFileForInput(Location location,
+                                              String className,
+                                              Kind kind)
+        throws IOException
+    {
+        nullCheck(location);
+        nullCheck(className);
+        nullCheck(kind);
+        String path = className.replace('.', '/') + kind.extension;
+        if (inMemory(location))
+            return get(location, path);
+        JavaFileObject fo = fileManager.getJavaFileForInput(location, className, kind);
+        if (fo == null && location == CLASS_PATH)
+            fo = get(CLASS_OUTPUT, path);
+        return fo;
+    }
+
+    public FileObject getFileForInput(Location location,
+                                      String packageName,
+                                      String relativeName)
+        throws IOException
+    {
+        nullCheck(location);
+        nullCheck(packageName);
+        if (inMemory(location))
+            return get(location, getPath(packageName, relativeName));
+        return fileManager.getFileForInput(location, packageName, relativeName);
+    }
+
+    public JavaFileObject getJavaFileForOutput(Location location,
+                                               String className,
+                                               Kind kind,
+                                               FileObject sibling)
+        throws IOException
+    {
+        nullCheck(location);
+        nullCheck(className);
+        nullCheck(kind);
+        if (!location.isOutputLocation())
+            return fileManager.getJavaFileForOutput(location, className, kind, sibling);
+        return new MemoryFileObject(this, location, className.replace('.', '/') + kind.extension);
+    }
+
+    public FileObject getFileForOutput(Location location,
+                                       String packageName,
+                                       String relativeName,
+                                       FileObject sibling)
+        throws IOException
+    {
+        nullCheck(location);
+        nullCheck(packageName);
+        if (!location.isOutputLocation())
+            return fileManager.getFileForOutput(location, packageName, relativeName, sibling);
+        return new MemoryFileObject(this, location, getPath(packageName, relativeName));
+    }
+
+    private static String getPath(String packageName, String relativeName) {
+        return packageName.length() == 0 ? relativeName
+            : packageName.replace('.', '/') + "/" + relativeName;
+    }
+
+    public void flush() throws IOException {
+        contentCache.clear();
+        fileManager.flush();
+    }
+
+    public void close() throws IOException {
+        fileManager.close();
+    }
+
+    // </editor-fold>
+
+    /**
+     * A class loader for the classes written to the class output location.
+     * Each one defines the classes written when it is asked for them, so a
+     * new one is needed to load classes that have been compiled again.
+     */
+    private class OutputClassLoader extends ClassLoader {
+        OutputClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] b = getClassBytes(name);
+            if (b == null)
+                throw new ClassNotFoundException(name);
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
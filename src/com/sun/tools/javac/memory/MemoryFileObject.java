@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.memory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+
+import com.sun.tools.javac.util.BaseFileManager;
+
+/**
+ *  A file held in memory by a MemoryFileManager: a source file given as
+ *  text, or a file written by the compiler, whose contents are the bytes
+ *  last written to it.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+class MemoryFileObject implements JavaFileObject {
+    private final MemoryFileManager fileManager;
+    final Location location;
+
+    /** The path of the file relative to its location, such as "p/C.class".
+     */
+    final String path;
+
+    private final Kind kind;
+    private final CharSequence text;
+    private volatile byte[] bytes;
+    private volatile long lastModified;
+
+    /** Create a source file with the given text.
+     */
+    MemoryFileObject(MemoryFileManager fileManager, Location location,
+            String path, CharSequence text) {
+        this.fileManager = fileManager;
+        this.location = location;
+        this.path = path;
+        this.kind = BaseFileManager.getKind(path);
+        this.text = text;
+        this.lastModified = System.currentTimeMillis();
+    }
+
+    /** Create a file for output, which is empty until it is written.
+     */
+    MemoryFileObject(MemoryFileManager fileManager, Location location, String path) {
+        this(fileManager, location, path, null);
+    }
+
+    /** The bytes last written to this file, or null if it has not been
+     *  written.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /** The binary name of the class this file is for, as inferred from
+     *  its path.
+     */
+    String getBinaryName() {
+        int dot = path.lastIndexOf('.');
+        return (dot < 0 ? path : path.substring(0, dot)).replace('/', '.');
+    }
+
+    public URI toUri() {
+        return URI.create("memory:///" + path);
+    }
+
+    public String getName() {
+        return path;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+        simpleName.getClass();
+        // null check
+        if (kind == Kind.OTHER && getKind() != kind)
+            return false;
+        String baseName = path.substring(path.lastIndexOf('/') + 1);
+        return baseName.equals(simpleName + kind.extension);
+    }
+
+    public NestingKind getNestingKind() { return null; }
+
+    public Modifier getAccessLevel()  { return null; }
+
+    public InputStream openInputStream() throws IOException {
+        if (text != null)
+            return new ByteArrayInputStream(text.toString().getBytes(fileManager.getEncodingName()));
+        byte[] b = bytes;
+        if (b == null)
+            throw new IOException(path + ": not written");
+        return new ByteArrayInputStream(b);
+    }
+
+    public OutputStream openOutputStream() throws IOException {
+        if (text != null)
+            throw new UnsupportedOperationException();
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+            @Override
+            public void close() {
+                if (closed)
+                    return;
+                closed = true;
+                bytes = toByteArray();
+                lastModified = System.currentTimeMillis();
+                fileManager.written(MemoryFileObject.this);
+            }
+        };
+    }
+
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+        return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+    }
+
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+        if (text != null)
+            return text;
+        CharBuffer cb = fileManager.getCachedContent(this);
+        if (cb == null) {
+            byte[] b = bytes;
+            if (b == null)
+                throw new IOException(path + ": not written");
+            JavaFileObject prev = fileManager.log.useSource(this);
+            try {
+                cb = fileManager.decode(ByteBuffer.wrap(b), ignoreEncodingErrors);
+            } finally {
+                fileManager.log.useSource(prev);
+            }
+            if (!ignoreEncodingErrors)
+                fileManager.cache(this, cb);
+        }
+        return cb;
+    }
+
+    public Writer openWriter() throws IOException {
+        return new OutputStreamWriter(openOutputStream(), fileManager.getEncodingName());
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public boolean delete() {
+        return fileManager.delete(this);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + "]";
+    }
+}
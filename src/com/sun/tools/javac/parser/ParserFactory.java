@@ -73,6 +73,24 @@ public class ParserFactory {
         this.scannerFactory = ScannerFactory.instance(context);
     }
 
+    private ParserFactory(ParserFactory fac, Log log) {
+        this.F = fac.F.forToplevel(null);
+        this.log = log;
+        this.names = fac.names;
+        this.keywords = fac.keywords;
+        this.source = fac.source;
+        this.options = fac.options;
+        this.scannerFactory = new ScannerFactory(fac.scannerFactory, log);
+    }
+
+    /** Create a parser factory for use on another thread. It has a tree
+     *  maker of its own and reports to the given log; the name table it
+     *  shares with this factory must be safe for concurrent use.
+     */
+    public ParserFactory fork(Log log) {
+        return new ParserFactory(this, log);
+    }
+
     public Parser newParser(CharSequence input, boolean keepDocComments, boolean keepEndPos, boolean keepLineMap) {
         // new一个Scanner
         Lexer lexer = scannerFactory.newScanner(input, keepDocComments);
@@ -38,6 +38,13 @@ import static com.sun.tools.javac.util.LayoutCharacters.*;
  * The lexical analyzer maps an input stream consisting of
  * ASCII characters and Unicode escapes into a token sequence.
  *
+ * <p>Identifiers made only of ASCII characters are entered into the
+ * name table straight from the input buffer; all other identifiers and
+ * literals are still collected in sbuf.  The scanner keeps only the
+ * current token, in its fields.  It does not buffer tokens or offer
+ * lookahead, because JavacParser decides between alternatives with its
+ * mode flags and never has to look past the current token.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own risk.
  * This code and its internal interfaces are subject to change or
@@ -144,6 +151,24 @@ public class Scanner implements Lexer {
      */
     private int unicodeConversionBp = -1;
 
+    /**
+     * How an ASCII character continues an identifier: IDENT_END ends it,
+     * IDENT_PART is part of it, and IDENT_SLOW needs scanIdent()'s general
+     * loop (unicode escapes, identifier-ignorable control characters, EOI).
+     */
+    private static final byte IDENT_END = 0, IDENT_PART = 1, IDENT_SLOW = 2;
+    private static final byte[] identClass = new byte[0x80];
+    static {
+        for (char c = 0; c < 0x80; c++) {
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '$' || c == '_')
+                identClass[c] = IDENT_PART;
+            else if (c <= '\u0008' || c >= '\u000E' && c <= '\u001B' || c == '\u007F'
+                    || c == '\\')
+                identClass[c] = IDENT_SLOW;
+        }
+    }
+
     /**
      * Common code for constructors.
      */
@@ -582,6 +607,21 @@ public class Scanner implements Lexer {
     // 直接通过break跳出switch语句后重新执行do-while循环，
     // 然后将这些字符存储到sbuf数组中，这都是标识符的一部分
     private void scanIdent() {
+        // 标识符只由ASCII字符组成且不含Unicode转义时，直接从buf中截取名称，
+        // 不需要逐个字符复制到sbuf中
+        if (sp == 0 && ch < '\u0080' && unicodeConversionBp != bp) {
+            int end = bp + 1;
+            char c = buf[end];
+            while (c < '\u0080' && identClass[c] == IDENT_PART)
+                c = buf[++end];
+            if (c < '\u0080' && identClass[c] == IDENT_END) {
+                name = names.fromChars(buf, bp, end - bp);
+                token = keywords.key(name);
+                bp = end;
+                ch = c;
+                return;
+            }
+        }
         boolean isJavaIdentifierPart;
         char high;
         do {
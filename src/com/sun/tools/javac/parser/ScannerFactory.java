@@ -68,6 +68,14 @@ public class ScannerFactory {
         this.keywords = Keywords.instance(context);
     }
 
+    /** Create a scanner factory like the given one, reporting to another log. */
+    ScannerFactory(ScannerFactory fac, Log log) {
+        this.log = log;
+        this.names = fac.names;
+        this.source = fac.source;
+        this.keywords = fac.keywords;
+    }
+
     public Scanner newScanner(CharSequence input, boolean keepDocComments) {
         if (input instanceof CharBuffer) {
             CharBuffer buf = (CharBuffer) input;
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.processing;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationValueVisitor;
+import javax.lang.model.element.ElementVisitor;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVisitor;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * The processing environment of isolating processors, when they are run
+ * concurrently with -XDparallelProcessors.
+ *
+ * <p>The compiler's implementation of the language model cannot be used
+ * by more than one thread at a time: symbols are completed when they are
+ * first looked at, and types cache the results of many operations. So an
+ * isolating processor is given the utilities, filer and messager of the
+ * processing environment, and every object of the language model, through
+ * a proxy that calls the compiler's own object with this environment
+ * locked, and that gives out the model objects it returns through proxies
+ * in the same way. Visitors passed to {@code accept} see proxies too.
+ * The processors run concurrently, but their calls into the compiler do
+ * not; the compiler holds the same lock while it initializes processors
+ * found while isolating processors are running. An isolating processor
+ * must not use the compiler tree API, which needs the compiler's own
+ * processing environment.
+ *
+ * <p>An annotation of an element given out by {@code getAnnotation} is
+ * also given out through a proxy, so that the type mirrors carried by a
+ * MirroredTypeException are proxies.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+class IsolatingEnvironment implements ProcessingEnvironment {
+
+    private final ProcessingEnvironment processingEnv;
+
+    /** The proxies given out, by the object they are for, so that an
+     *  object is always seen through the same proxy. */
+    private final Map<Object, Object> proxies = new IdentityHashMap<Object, Object>();
+
+    /** The interfaces of the language model implemented by a class. */
+    private final Map<Class<?>, Class<?>[]> modelInterfaces = new HashMap<Class<?>, Class<?>[]>();
+
+    IsolatingEnvironment(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+    }
+
+    public Map<String,String> getOptions() {
+        return processingEnv.getOptions();
+    }
+
+    public Messager getMessager() {
+        return (Messager) wrap(processingEnv.getMessager());
+    }
+
+    public Filer getFiler() {
+        return (Filer) wrap(processingEnv.getFiler());
+    }
+
+    public Elements getElementUtils() {
+        return (Elements) wrap(processingEnv.getElementUtils());
+    }
+
+    public Types getTypeUtils() {
+        return (Types) wrap(processingEnv.getTypeUtils());
+    }
+
+    public SourceVersion getSourceVersion() {
+        return processingEnv.getSourceVersion();
+    }
+
+    public Locale getLocale() {
+        return processingEnv.getLocale();
+    }
+
+    /** Forget the proxies given out so far. Processors that keep them
+     *  can go on using them. */
+    synchronized void clear() {
+        proxies.clear();
+    }
+
+    /**
+     * Get the object to be given to an isolating processor for one given
+     * out by the compiler: a proxy for an object of the language model, a
+     * copy of a collection or array holding such objects, or the object
+     * itself.
+     */
+    synchronized Object wrap(Object o) {
+        if (o == null || o instanceof String || o instanceof Number || o instanceof Boolean
+                || o instanceof Character || o instanceof Enum<?> || o instanceof Class<?>
+                || isProxy(o))
+            return o;
+        if (o instanceof java.util.List<?>) {
+            java.util.List<Object> list = new ArrayList<Object>();
+            for (Object e : (java.util.List<?>) o)
+                list.add(wrap(e));
+            return list;
+        }
+        if (o instanceof Set<?>) {
+            Set<Object> set = new LinkedHashSet<Object>();
+            for (Object e : (Set<?>) o)
+                set.add(wrap(e));
+            return set;
+        }
+        if (o instanceof Map<?,?>) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?,?> e : ((Map<?,?>) o).entrySet())
+                map.put(wrap(e.getKey()), wrap(e.getValue()));
+            return map;
+        }
+        if (o instanceof Object[]) {
+            Object[] a = (Object[]) o;
+            Object[] copy = (Object[]) Array.newInstance(a.getClass().getComponentType(), a.length);
+            for (int i = 0; i < a.length; i++)
+                copy[i] = wrap(a[i]);
+            return copy;
+        }
+        Object proxy = proxies.get(o);
+        if (proxy == null) {
+            if (o instanceof Annotation) {
+                Class<? extends Annotation> type = ((Annotation) o).annotationType();
+                proxy = Proxy.newProxyInstance(type.getClassLoader(),
+                                               new Class<?>[] { type },
+                                               new AnnotationHandler(o));
+            } else {
+                Class<?>[] interfaces = modelInterfaces(o.getClass());
+                if (interfaces.length == 0)
+                    return o;
+                proxy = Proxy.newProxyInstance(IsolatingEnvironment.class.getClassLoader(),
+                                               interfaces,
+                                               new ModelHandler(o));
+            }
+            proxies.put(o, proxy);
+        }
+        return proxy;
+    }
+
+    /**
+     * Get the object to be given to the compiler for one given by an
+     * isolating processor.
+     */
+    private Object unwrap(Object o) {
+        if (o == null)
+            return null;
+        if (Proxy.isProxyClass(o.getClass())) {
+            InvocationHandler h = Proxy.getInvocationHandler(o);
+            if (h instanceof Handler)
+                return ((Handler) h).target;
+        }
+        if (o instanceof Object[]) {
+            Object[] a = (Object[]) o;
+            Object[] copy = (Object[]) Array.newInstance(a.getClass().getComponentType(), a.length);
+            for (int i = 0; i < a.length; i++)
+                copy[i] = unwrap(a[i]);
+            return copy;
+        }
+        return o;
+    }
+
+    private static boolean isProxy(Object o) {
+        return Proxy.isProxyClass(o.getClass())
+            && Proxy.getInvocationHandler(o) instanceof Handler;
+    }
+
+    private Class<?>[] modelInterfaces(Class<?> c) {
+        Class<?>[] interfaces = modelInterfaces.get(c);
+        if (interfaces == null) {
+            Set<Class<?>> found = new LinkedHashSet<Class<?>>();
+            for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+                for (Class<?> i : k.getInterfaces()) {
+                    if (isModelInterface(i))
+                        found.add(i);
+                }
+            }
+            interfaces = found.toArray(new Class<?>[found.size()]);
+            modelInterfaces.put(c, interfaces);
+        }
+        return interfaces;
+    }
+
+    private static boolean isModelInterface(Class<?> i) {
+        return i.getName().startsWith("javax.lang.model.")
+            || i == Filer.class
+            || i == Messager.class
+            || i == RoundEnvironment.class;
+    }
+
+    private static Object invoke(Method m, Object target, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private abstract class Handler implements InvocationHandler {
+        final Object target;
+
+        Handler(Object target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * Calls an object of the language model, or one of the services of
+     * the processing environment, with the environment locked.
+     */
+    private class ModelHandler extends Handler {
+        ModelHandler(Object target) {
+            super(target);
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            synchronized (IsolatingEnvironment.this) {
+                if (m.getName().equals("accept")) {
+                    // the result and the argument are those of the visitor
+                    args = args.clone();
+                    args[0] = visitor(args[0]);
+                    return IsolatingEnvironment.invoke(m, target, args);
+                }
+                if (args != null) {
+                    args = args.clone();
+                    for (int i = 0; i < args.length; i++)
+                        args[i] = unwrap(args[i]);
+                }
+                return wrap(IsolatingEnvironment.invoke(m, target, args));
+            }
+        }
+
+        private Object visitor(Object v) {
+            Set<Class<?>> found = new LinkedHashSet<Class<?>>();
+            for (Class<?> k = v.getClass(); k != null; k = k.getSuperclass()) {
+                for (Class<?> i : k.getInterfaces()) {
+                    if (i == ElementVisitor.class || i == TypeVisitor.class
+                            || i == AnnotationValueVisitor.class)
+                        found.add(i);
+                }
+            }
+            return Proxy.newProxyInstance(IsolatingEnvironment.class.getClassLoader(),
+                                          found.toArray(new Class<?>[found.size()]),
+                                          new VisitorHandler(v));
+        }
+    }
+
+    /**
+     * Calls a visitor of an isolating processor, which is called back by
+     * the compiler with the environment locked, giving it a proxy for the
+     * object visited.
+     */
+    private class VisitorHandler implements InvocationHandler {
+        final Object visitor;
+
+        VisitorHandler(Object visitor) {
+            this.visitor = visitor;
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            if (args != null && args.length > 0) {
+                args = args.clone();
+                args[0] = wrap(args[0]);
+            }
+            return IsolatingEnvironment.invoke(m, visitor, args);
+        }
+    }
+
+    /**
+     * Calls an annotation made by the compiler from an annotation mirror,
+     * giving out proxies for the type mirrors that cannot be made into
+     * classes.
+     */
+    private class AnnotationHandler extends Handler {
+        AnnotationHandler(Object target) {
+            super(target);
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            synchronized (IsolatingEnvironment.this) {
+                if (args != null) {
+                    args = args.clone();
+                    for (int i = 0; i < args.length; i++)
+                        args[i] = unwrap(args[i]);
+                }
+                try {
+                    return wrap(IsolatingEnvironment.invoke(m, target, args));
+                } catch (MirroredTypeException e) {
+                    throw new MirroredTypeException((TypeMirror) wrap(e.getTypeMirror()));
+                } catch (MirroredTypesException e) {
+                    @SuppressWarnings("unchecked")
+                    java.util.List<? extends TypeMirror> types =
+                        (java.util.List<? extends TypeMirror>) wrap(e.getTypeMirrors());
+                    throw new MirroredTypesException(types);
+                }
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ import static javax.tools.StandardLocation.CLASS_OUTPUT;
 
 import com.sun.tools.javac.code.Lint;
 import com.sun.tools.javac.util.*;
+import com.sun.tools.javac.util.List;
 
 import static com.sun.tools.javac.code.Lint.LintCategory.PROCESSING;
 
@@ -352,6 +353,13 @@ public class JavacFiler implements Filer, Closeable {
      */
     private final Set<String> aggregateGeneratedClassNames;
 
+    /**
+     * Files closed by threads running isolating processors, held back
+     * so that they can be added to the files generated in this round
+     * in the order the processors were run.
+     */
+    private final ThreadLocal<ListBuffer<Pair<String, FileObject>>> heldFiles =
+        new ThreadLocal<ListBuffer<Pair<String, FileObject>>>();
 
     JavacFiler(Context context) {
         this.context = context;
@@ -546,6 +554,33 @@ public class JavacFiler implements Filer, Closeable {
             log.warning("proc.unclosed.type.files", openTypeNames.toString());
     }
 
+    /**
+     * Hold back the files closed by the current thread, until they are
+     * taken with takeClosedFiles.
+     */
+    void holdClosedFiles() {
+        heldFiles.set(new ListBuffer<Pair<String, FileObject>>());
+    }
+
+    /**
+     * Stop holding back the files closed by the current thread, and
+     * return the names and files of those closed so far.
+     */
+    List<Pair<String, FileObject>> takeClosedFiles() {
+        ListBuffer<Pair<String, FileObject>> held = heldFiles.get();
+        heldFiles.remove();
+        return (held == null) ? List.<Pair<String, FileObject>>nil() : held.toList();
+    }
+
+    /**
+     * Add files taken with takeClosedFiles to the files generated in
+     * this round.
+     */
+    void closeFiles(List<Pair<String, FileObject>> files) {
+        for (Pair<String, FileObject> f : files)
+            closeFileObject(f.fst, f.snd);
+    }
+
     /**
      * Update internal state for a new round.
      */
@@ -596,6 +631,11 @@ public class JavacFiler implements Filer, Closeable {
      * for annotation processing.
      */
     private void closeFileObject(String typeName, FileObject fileObject) {
+        ListBuffer<Pair<String, FileObject>> held = heldFiles.get();
+        if (held != null) {
+            held.append(new Pair<String, FileObject>(typeName, fileObject));
+            return;
+        }
         /*
          * If typeName is non-null, the file object was opened as a
          * source or class file by the user.  If a file was opened as
@@ -27,6 +27,10 @@ package com.sun.tools.javac.processing;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.*;
 
 import java.net.URL;
@@ -44,6 +48,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.util.*;
+import javax.tools.FileObject;
 import javax.tools.JavaFileManager;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.JavaFileObject;
@@ -59,6 +64,7 @@ import com.sun.tools.javac.file.FSInfo;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.jvm.*;
 import com.sun.tools.javac.jvm.ClassReader.BadClassFile;
+import com.sun.tools.javac.main.CompileStatistics;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.main.JavaCompiler.CompileState;
 import com.sun.tools.javac.model.JavacElements;
@@ -74,11 +80,14 @@ import com.sun.tools.javac.util.Convert;
 import com.sun.tools.javac.util.FatalError;
 import com.sun.tools.javac.util.JCDiagnostic;
 import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.JavacMessages;
 import com.sun.tools.javac.util.Name;
 import com.sun.tools.javac.util.Names;
 import com.sun.tools.javac.util.Options;
+import com.sun.tools.javac.util.Pair;
+import com.sun.tools.javac.util.WorkerThreads;
 
 import static javax.tools.StandardLocation.*;
 import static com.sun.tools.javac.util.JCDiagnostic.DiagnosticFlag.*;
@@ -116,8 +125,25 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     private final boolean fatalErrors;
     private final boolean werror;
     private final boolean showResolveErrors;
+    private final boolean incrementalRounds;
     private boolean foundTypeProcessors;
 
+    /**
+     * The option by which a processor declares, among its supported
+     * options, that it is isolating: that it keeps no state that other
+     * processors can see, and so can be run at the same time as other
+     * isolating processors.
+     */
+    static final String ISOLATING_OPTION = "javac.isolating";
+
+    /**
+     * The environment of isolating processors, if they are run
+     * concurrently, as with -XDparallelProcessors=n; otherwise null.
+     */
+    private final IsolatingEnvironment isolatingEnv;
+    private final int processorThreads;
+    private ExecutorService processorPool;
+
     // 用来创建新的Java源文件、Class文件及辅助文件
     private final JavacFiler filer;
     // 用来报告错误、警告或其他提示信息
@@ -190,6 +216,14 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         procOnly = options.isSet(PROC, "only") || options.isSet(XPRINT);
         fatalErrors = options.isSet("fatalEnterError");
         showResolveErrors = options.isSet("showResolveErrors");
+        incrementalRounds = options.isSet("incrementalRounds");
+        if (options.isSet("parallelProcessors")) {
+            isolatingEnv = new IsolatingEnvironment(this);
+            processorThreads = WorkerThreads.count(options, "parallelProcessors");
+        } else {
+            isolatingEnv = null;
+            processorThreads = 0;
+        }
         werror = options.isSet(WERROR);
         platformAnnotations = initPlatformAnnotations();
         foundTypeProcessors = false;
@@ -548,10 +582,13 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         private ArrayList<Pattern> supportedAnnotationPatterns;
         // 保存了注解处理器能够处理的注解选项
         private ArrayList<String>  supportedOptionNames;
+        // isolating表示此注解处理器是否与其他isolating的注解处理器并行运行
+        public final boolean isolating;
 
         ProcessorState(Processor p, Log log, Source source, ProcessingEnvironment env) {
             processor = p;
             contributed = false;
+            isolating = (env instanceof IsolatingEnvironment);
 
             try {
                 // 处理注解处理器的初始化信息
@@ -669,8 +706,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
 
                 if (psi.processorIterator.hasNext()) {
                     // 通过迭代器psi.processorIterator迭代所有的Processor对象并封装为ProcessorState对象
-                    ProcessorState ps = new ProcessorState(psi.processorIterator.next(),
-                                                           log, source, JavacProcessingEnvironment.this);
+                    Processor p = psi.processorIterator.next();
+                    ProcessingEnvironment env = (isolatingEnv != null && isIsolating(p))
+                        ? isolatingEnv : JavacProcessingEnvironment.this;
+                    ProcessorState ps = new ProcessorState(p, log, source, env);
                     // 最终，所有的Processor对象会被封装为ProcessState对象并保存到procStateList列表中
                     psi.procStateList.add(ps);
                     return ps;
@@ -698,11 +737,19 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             public void runContributingProcs(RoundEnvironment re) {
                 if (!onProcInterator) {
                     Set<TypeElement> emptyTypeElements = Collections.emptySet();
+                    ListBuffer<IsolatedRun> isolatedRuns = new ListBuffer<IsolatedRun>();
                     while(innerIter.hasNext()) {
                         ProcessorState ps = innerIter.next();
-                        if (ps.contributed)
-                            callProcessor(ps.processor, emptyTypeElements, re);
+                        if (ps.contributed) {
+                            if (ps.isolating) {
+                                isolatedRuns.append(startProcessor(ps, emptyTypeElements, re, null));
+                            } else {
+                                finishProcessors(isolatedRuns, null);
+                                callProcessor(ps.processor, emptyTypeElements, re);
+                            }
+                        }
                     }
+                    finishProcessors(isolatedRuns, null);
                 }
             }
         }
@@ -736,6 +783,7 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
     // 运行注解处理器
     private void discoverAndRunProcs(Context context,
                                      Set<TypeElement> annotationsPresent,
+                                     Map<TypeElement, Set<Element>> annotatedElements,
                                      List<ClassSymbol> topLevelClasses,
                                      List<PackageSymbol> packageInfoFiles) {
         // 需要处理的元素的全限定名和元素的映射
@@ -766,12 +814,19 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         RoundEnvironment renv = new JavacRoundEnvironment(false,
                                                           false,
                                                           rootElements,
+                                                          annotatedElements,
                                                           JavacProcessingEnvironment.this);
 
+        ListBuffer<IsolatedRun> isolatedRuns = new ListBuffer<IsolatedRun>();
+
         // 当有待处理的注解并且有注解处理器的情况下，查找能处理注解的注解处理器并运行
         while(unmatchedAnnotations.size() > 0 && psi.hasNext() ) {
             // 调用psi.next()方法获取ProcessorState对象
-            ProcessorState ps = psi.next();
+            ProcessorState ps = nextProcessor(psi);
+            // 在已启动的isolating注解处理器可能认领此注解处理器支持的注解时，
+            // 先等待它们完成，使匹配结果与依次运行时相同
+            if (!isolatedRuns.isEmpty() && (!ps.isolating || maySupportClaimed(ps, isolatedRuns)))
+                finishProcessors(isolatedRuns, unmatchedAnnotations);
             // 匹配出可以被处理的注解名
             Set<String>  matchedNames = new HashSet<String>();
             // 匹配出可以被处理的元素
@@ -793,24 +848,23 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             }
             // 当注解处理器ps能够处理某些注解或者在之前的Round中运行过此注解处理器时
             if (matchedNames.size() > 0 || ps.contributed) {
-                // 调用callProcessor()方法运行此注解处理器
-                boolean processingResult = callProcessor(ps.processor, typeElements, renv);
-                ps.contributed = true;
-                ps.removeSupportedOptions(unmatchedProcessorOptions);
-
-                if (printProcessorInfo || verbose) {
-                    log.printNoteLines("x.print.processor.info",
-                            ps.processor.getClass().getName(),
-                            matchedNames.toString(),
-                            processingResult);
-                }
-                // 注解处理器执行成功，移除处理器名称
-                if (processingResult) {
-                    unmatchedAnnotations.keySet().removeAll(matchedNames);
+                if (ps.isolating) {
+                    // isolating的注解处理器在处理器线程上运行，
+                    // 其结果在下一个非isolating的注解处理器运行之前按顺序处理
+                    isolatedRuns.append(startProcessor(ps, typeElements, renv, matchedNames));
+                } else {
+                    // 调用callProcessor()方法运行此注解处理器
+                    boolean processingResult = callProcessor(ps.processor, typeElements, renv);
+                    processorRan(ps, matchedNames, processingResult, unmatchedAnnotations);
                 }
-
             }
+            // 已启动的isolating注解处理器可能认领所有剩下的注解时，
+            // 先等待它们完成，再决定是否继续查找注解处理器
+            if (!isolatedRuns.isEmpty()
+                    && mayBeClaimed(isolatedRuns).containsAll(unmatchedAnnotations.keySet()))
+                finishProcessors(isolatedRuns, unmatchedAnnotations);
         }
+        finishProcessors(isolatedRuns, unmatchedAnnotations);
         unmatchedAnnotations.remove("");
 
         if (lint && unmatchedAnnotations.size() > 0) {
@@ -827,11 +881,186 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         // 再次运行之前Round中运行过的注解处理器
         psi.runContributingProcs(renv);
 
+        // The proxies given out this round are not needed any more
+        if (isolatingEnv != null)
+            isolatingEnv.clear();
+
         // Debugging
         if (options.isSet("displayFilerState"))
             filer.displayState();
     }
 
+    /**
+     * Record that a processor has been run, with the annotations it
+     * matched, and the result it returned.
+     */
+    private void processorRan(ProcessorState ps,
+                              Set<String> matchedNames,
+                              boolean processingResult,
+                              Map<String, TypeElement> unmatchedAnnotations) {
+        ps.contributed = true;
+        ps.removeSupportedOptions(unmatchedProcessorOptions);
+
+        if (printProcessorInfo || verbose) {
+            log.printNoteLines("x.print.processor.info",
+                    ps.processor.getClass().getName(),
+                    matchedNames.toString(),
+                    processingResult);
+        }
+        // 注解处理器执行成功，移除处理器名称
+        if (processingResult) {
+            unmatchedAnnotations.keySet().removeAll(matchedNames);
+        }
+    }
+
+    /**
+     * Get the next processor for a round. A processor found for the
+     * first time is initialized with isolating processors possibly
+     * running, so the model is locked as it is for their calls.
+     */
+    private ProcessorState nextProcessor(Iterator<ProcessorState> psi) {
+        if (isolatingEnv == null)
+            return psi.next();
+        synchronized (isolatingEnv) {
+            return psi.next();
+        }
+    }
+
+    /**
+     * The annotations that isolating processors started and not yet
+     * finished have matched, and may claim.
+     */
+    private static Set<String> mayBeClaimed(ListBuffer<IsolatedRun> runs) {
+        Set<String> names = new HashSet<String>();
+        for (IsolatedRun run : runs)
+            names.addAll(run.matchedNames);
+        return names;
+    }
+
+    /**
+     * Does a processor support any annotation that isolating processors
+     * started and not yet finished may claim?
+     */
+    private static boolean maySupportClaimed(ProcessorState ps, ListBuffer<IsolatedRun> runs) {
+        for (String name : mayBeClaimed(runs)) {
+            if (ps.annotationSupported(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Does a processor declare that it is isolating?  This is asked before
+     * the processor is initialized, since the answer decides the
+     * environment it is initialized with.  A processor that cannot answer
+     * before it is initialized is not isolating; if it still fails once it
+     * is initialized, that is reported as usual.
+     */
+    private static boolean isIsolating(Processor p) {
+        try {
+            Set<String> options = p.getSupportedOptions();
+            return options != null && options.contains(ISOLATING_OPTION);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Start an isolating processor on the processor threads. Its
+     * diagnostics and the files it generates are held back until it is
+     * finished with finishProcessors.
+     * @param matchedNames the annotations matched by the processor, or
+     *        null if it is run only because it contributed before
+     */
+    private IsolatedRun startProcessor(ProcessorState ps,
+                                       Set<? extends TypeElement> tes,
+                                       RoundEnvironment renv,
+                                       Set<String> matchedNames) {
+        if (processorPool == null) {
+            processorPool = WorkerThreads.newPool(processorThreads, "processor");
+        }
+        @SuppressWarnings("unchecked")
+        Set<? extends TypeElement> isolatedTes = (Set<? extends TypeElement>) isolatingEnv.wrap(tes);
+        IsolatedRun run = new IsolatedRun(ps, isolatedTes,
+                                          (RoundEnvironment) isolatingEnv.wrap(renv),
+                                          matchedNames, Log.instance(context));
+        run.result = processorPool.submit(run);
+        return run;
+    }
+
+    /**
+     * Wait for the isolating processors started so far, then report
+     * their diagnostics, add the files they generated, and record their
+     * results, in the order they were started, as if they had been run
+     * one after another.
+     */
+    private void finishProcessors(ListBuffer<IsolatedRun> runs,
+                                  Map<String, TypeElement> unmatchedAnnotations) {
+        if (runs.isEmpty())
+            return;
+        List<IsolatedRun> started = runs.toList();
+        runs.clear();
+        for (IsolatedRun run : started) {
+            try {
+                run.result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new Abort(ex);
+            } catch (ExecutionException ex) {
+                // IsolatedRun.call catches all that the processor throws
+                throw new Abort(ex.getCause());
+            }
+        }
+        for (IsolatedRun run : started) {
+            for (JCDiagnostic d : run.diagnostics)
+                run.log.report(d);
+            filer.closeFiles(run.closedFiles);
+            boolean processingResult = (run.failure == null)
+                ? run.processingResult
+                : processorFailed(run.failure);
+            if (run.matchedNames != null)
+                processorRan(run.ps, run.matchedNames, processingResult, unmatchedAnnotations);
+        }
+    }
+
+    /** An isolating processor run on the processor threads.
+     */
+    private class IsolatedRun implements Callable<Boolean> {
+        final ProcessorState ps;
+        final Set<? extends TypeElement> tes;
+        final RoundEnvironment renv;
+        final Set<String> matchedNames;
+        final Log log;
+        Future<Boolean> result;
+        boolean processingResult;
+        Throwable failure;
+        List<JCDiagnostic> diagnostics;
+        List<Pair<String, FileObject>> closedFiles;
+
+        IsolatedRun(ProcessorState ps, Set<? extends TypeElement> tes, RoundEnvironment renv,
+                    Set<String> matchedNames, Log log) {
+            this.ps = ps;
+            this.tes = tes;
+            this.renv = renv;
+            this.matchedNames = matchedNames;
+            this.log = log;
+        }
+
+        public Boolean call() {
+            log.holdDiagnostics();
+            filer.holdClosedFiles();
+            try {
+                processingResult = ps.processor.process(tes, renv);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                diagnostics = log.takeHeldDiagnostics();
+                closedFiles = filer.takeClosedFiles();
+            }
+            return processingResult;
+        }
+    }
+
     /**
      * Computes the set of annotations on the symbol in question.
      * Leave class public for external testing purposes.
@@ -840,9 +1069,19 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         ElementScanner7<Set<TypeElement>, Set<TypeElement>> {
         final Elements elements;
 
+        /** If not null, the elements scanned, by annotation type,
+         *  in the order they are found. */
+        final Map<TypeElement, Set<Element>> annotatedElements;
+
         public ComputeAnnotationSet(Elements elements) {
+            this(elements, null);
+        }
+
+        public ComputeAnnotationSet(Elements elements,
+                                    Map<TypeElement, Set<Element>> annotatedElements) {
             super();
             this.elements = elements;
+            this.annotatedElements = annotatedElements;
         }
 
         @Override
@@ -861,6 +1100,14 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
                 Element e2 = annotationMirror.getAnnotationType().asElement();
                 // 将需要处理的注解类型放入Set中
                 p.add((TypeElement) e2);
+                if (annotatedElements != null) {
+                    Set<Element> annotated = annotatedElements.get(e2);
+                    if (annotated == null) {
+                        annotated = new LinkedHashSet<Element>();
+                        annotatedElements.put((TypeElement) e2, annotated);
+                    }
+                    annotated.add(e);
+                }
             }
             return super.scan(e, p);
         }
@@ -873,17 +1120,29 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         try {
             // 真正执行注解处理器
             return proc.process(tes, renv);
-        } catch (BadClassFile ex) {
+        } catch (Throwable t) {
+            return processorFailed(t);
+        }
+    }
+
+    /**
+     * Report a symbol that a processor could not complete, and return
+     * false as its result, or rethrow anything else it threw.
+     */
+    private boolean processorFailed(Throwable t) {
+        if (t instanceof BadClassFile) {
+            BadClassFile ex = (BadClassFile) t;
             log.error("proc.cant.access.1", ex.sym, ex.getDetailValue());
             return false;
-        } catch (CompletionFailure ex) {
+        } else if (t instanceof CompletionFailure) {
+            CompletionFailure ex = (CompletionFailure) t;
             StringWriter out = new StringWriter();
             ex.printStackTrace(new PrintWriter(out));
             log.error("proc.cant.access", ex.sym, ex.getDetailValue(), out.toString());
             return false;
-        } catch (ClientCodeException e) {
-            throw e;
-        } catch (Throwable t) {
+        } else if (t instanceof ClientCodeException) {
+            throw (ClientCodeException) t;
+        } else {
             throw new AnnotationProcessingError(t);
         }
     }
@@ -909,6 +1168,8 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         /** The set of annotations to be processed this round. */
         // 本轮要处理的注解集
         Set<TypeElement> annotationsPresent;
+        /** The elements of this round, by the annotations present on them. */
+        Map<TypeElement, Set<Element>> annotatedElements;
         /** The set of top level classes to be processed this round. */
         List<ClassSymbol> topLevelClasses;
         /** The set of package-info files to be processed this round. */
@@ -917,6 +1178,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         /** The number of Messager errors generated in this round. */
         int nMessagerErrors;
 
+        /** Whether any errors were found in this round, including transient
+         *  resolve errors that are not reported. */
+        boolean foundErrors;
+
         /** Create a round (common code). */
         private Round(Context context, int number, int priorErrors, int priorWarnings) {
             this.context = context;
@@ -959,16 +1224,19 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             findAnnotationsPresent();
         }
 
-        /** Create a new round. */
+        /** Create a new round. If the new source files have already been
+         *  parsed, parsedFiles holds the result; otherwise it is null. */
         private Round(Round prev,
-                Set<JavaFileObject> newSourceFiles, Map<String,JavaFileObject> newClassFiles) {
+                Set<JavaFileObject> newSourceFiles, List<JCCompilationUnit> parsedFiles,
+                Map<String,JavaFileObject> newClassFiles) {
             this(prev.nextContext(),
                     prev.number+1,
                     prev.nMessagerErrors,
                     prev.compiler.log.nwarnings);
             this.genClassFiles = prev.genClassFiles;
 
-            List<JCCompilationUnit> parsedFiles = compiler.parseFiles(newSourceFiles);
+            if (parsedFiles == null)
+                parsedFiles = compiler.parseFiles(newSourceFiles);
             roots = cleanTrees(prev.roots).appendList(parsedFiles);
 
             // Check for errors after parsing
@@ -994,15 +1262,112 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             findAnnotationsPresent();
         }
 
+        /** Create a new round in the same context as the previous one,
+         *  keeping the symbols entered for its trees, and entering only the
+         *  trees for the new source files, which have already been parsed.
+         */
+        private Round(Round prev, List<JCCompilationUnit> parsedFiles) {
+            this(prev.context,
+                    prev.number+1,
+                    prev.nMessagerErrors,
+                    0);
+            this.genClassFiles = prev.genClassFiles;
+
+            filer.newRound(context);
+            messager.newRound(context);
+
+            roots = prev.roots.appendList(parsedFiles);
+            enterTrees(parsedFiles);
+
+            if (unrecoverableError())
+                return;
+
+            topLevelClasses = getTopLevelClasses(parsedFiles);
+            packageInfoFiles = getPackageInfoFiles(parsedFiles);
+
+            findAnnotationsPresent();
+        }
+
         /** Create the next round to be used. */
         Round next(Set<JavaFileObject> newSourceFiles, Map<String, JavaFileObject> newClassFiles) {
+            List<JCCompilationUnit> parsedFiles = null;
+            if (incrementalRounds && !foundErrors && nMessagerErrors == 0 && newClassFiles.isEmpty()) {
+                parsedFiles = parseNewFiles(newSourceFiles);
+                if (parsedFiles != null && canEnterIncrementally(parsedFiles))
+                    return new Round(this, parsedFiles);
+            }
             try {
-                return new Round(this, newSourceFiles, newClassFiles);
+                return new Round(this, newSourceFiles, parsedFiles, newClassFiles);
             } finally {
                 compiler.close(false);
             }
         }
 
+        /** Parse the new source files in the context of this round,
+         *  returning null if there were any diagnostics, which are then
+         *  discarded: the files will be parsed again for the next round
+         *  so that the diagnostics are reported there.
+         */
+        private List<JCCompilationUnit> parseNewFiles(Set<JavaFileObject> newSourceFiles) {
+            log.deferDiagnostics = true;
+            List<JCCompilationUnit> parsedFiles = compiler.parseFiles(newSourceFiles);
+            if (!log.deferredDiagnostics.isEmpty()) {
+                log.deferredDiagnostics.clear();
+                return null;
+            }
+            return parsedFiles;
+        }
+
+        /** Can the trees for the new source files be entered on top of
+         *  those of this round, giving the same symbols as if all the trees
+         *  were entered again in a new context? That is so unless a new
+         *  class has already been looked for, or might hide a class that an
+         *  existing compilation unit imports on demand. New package-info
+         *  files may add to the annotations of packages that have already
+         *  been seen, and are always entered again.
+         */
+        private boolean canEnterIncrementally(List<JCCompilationUnit> parsedFiles) {
+            ClassReader reader = ClassReader.instance(context);
+            Names names = Names.instance(context);
+            for (JCCompilationUnit unit : parsedFiles) {
+                if (isPkgInfo(unit.sourcefile, JavaFileObject.Kind.SOURCE))
+                    return false;
+                Name packageName = (unit.pid == null) ? names.empty : TreeInfo.fullName(unit.pid);
+                for (JCTree node : unit.defs) {
+                    if (node.getTag() != JCTree.CLASSDEF)
+                        continue;
+                    Name name = ((JCClassDecl) node).name;
+                    Name flatName = packageName.isEmpty() ? name
+                            : names.fromString(packageName + "." + name);
+                    if (reader.isEntered(flatName))
+                        return false;
+                    for (JCCompilationUnit root : roots) {
+                        if (importsOnDemand(root, packageName, names)
+                                && root.starImportScope.lookup(name).scope != null)
+                            return false;
+                    }
+                }
+            }
+            return true;
+        }
+        // where
+            /** Are the classes of the given package visible in a compilation
+             *  unit without a single-type import? */
+            private boolean importsOnDemand(JCCompilationUnit unit, Name packageName, Names names) {
+                if (unit.packge.fullname == packageName)
+                    return true;
+                for (JCTree node : unit.defs) {
+                    if (node.getTag() != JCTree.IMPORT)
+                        continue;
+                    JCImport imp = (JCImport) node;
+                    if (!imp.staticImport
+                            && TreeInfo.name(imp.qualid) == names.asterisk
+                            && TreeInfo.fullName(((JCFieldAccess) imp.qualid).selected) == packageName)
+                        return true;
+                }
+                return false;
+            }
+
         /** Create the compiler to be used for the final compilation. */
         JavaCompiler finalCompiler(boolean errorStatus) {
             try {
@@ -1057,7 +1422,9 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         // 查找所有使用到的注解类型并保存到Round类的annotationsPresent中
         void findAnnotationsPresent() {
             // 通过ComputeAnnotationSet类对语法树进行扫描，找到使用到的注解类型
-            ComputeAnnotationSet annotationComputer = new ComputeAnnotationSet(elementUtils);
+            annotatedElements = new HashMap<TypeElement, Set<Element>>();
+            ComputeAnnotationSet annotationComputer =
+                new ComputeAnnotationSet(elementUtils, annotatedElements);
             // Use annotation processing to compute the set of annotations present
             annotationsPresent = new LinkedHashSet<TypeElement>();
             for (ClassSymbol classSym : topLevelClasses)
@@ -1107,6 +1474,9 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             if (taskListener != null)
                 taskListener.started(new TaskEvent(TaskEvent.Kind.ANNOTATION_PROCESSING_ROUND));
 
+            CompileStatistics stats = CompileStatistics.instance(context);
+            if (stats != null)
+                stats.beginRound();
             try {
                 // 第一轮注解处理器的调用时，lastRound为false
                 // lastRound为true，标识最后一轮注解处理器
@@ -1116,13 +1486,17 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
                     RoundEnvironment renv = new JavacRoundEnvironment(true,
                             errorStatus,
                             emptyRootElements,
+                            Collections.<TypeElement, Set<Element>>emptyMap(),
                             JavacProcessingEnvironment.this);
                     discoveredProcs.iterator().runContributingProcs(renv);
                 } else {
                     // 第一轮时调用
-                    discoverAndRunProcs(context, annotationsPresent, topLevelClasses, packageInfoFiles);
+                    discoverAndRunProcs(context, annotationsPresent, annotatedElements,
+                            topLevelClasses, packageInfoFiles);
                 }
             } finally {
+                if (stats != null)
+                    stats.end();
                 if (taskListener != null)
                     taskListener.finished(new TaskEvent(TaskEvent.Kind.ANNOTATION_PROCESSING_ROUND));
             }
@@ -1131,6 +1505,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
         }
 
         void showDiagnostics(boolean showAll) {
+            for (JCDiagnostic d: log.deferredDiagnostics) {
+                if (d.getKind() == JCDiagnostic.Kind.ERROR)
+                    foundErrors = true;
+            }
             Set<JCDiagnostic.Kind> kinds = EnumSet.allOf(JCDiagnostic.Kind.class);
             if (!showAll) {
                 // suppress errors, which are all presumed to be transient resolve errors
@@ -1191,6 +1569,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
             if (fsInfo != null)
                 next.put(FSInfo.class, fsInfo);
 
+            CompileStatistics stats = context.get(CompileStatistics.statisticsKey);
+            if (stats != null)
+                next.put(CompileStatistics.statisticsKey, stats);
+
             JavaFileManager jfm = context.get(JavaFileManager.class);
             Assert.checkNonNull(jfm);
             next.put(JavaFileManager.class, jfm);
@@ -1358,6 +1740,10 @@ public class JavacProcessingEnvironment implements ProcessingEnvironment, Closea
      * Free resources related to annotation processing.
      */
     public void close() {
+        if (processorPool != null) {
+            processorPool.shutdownNow();
+            processorPool = null;
+        }
         filer.close();
         if (discoveredProcs != null) // Make calling close idempotent
             discoveredProcs.close();
@@ -30,6 +30,7 @@ import com.sun.tools.javac.tree.JCTree.*;
 import javax.annotation.processing.*;
 import javax.lang.model.element.*;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.*;
 import java.util.*;
@@ -55,16 +56,36 @@ public class JavacRoundEnvironment implements RoundEnvironment {
     // Caller must pass in an immutable set
     private final Set<? extends Element> rootElements;
 
+    /** The root elements and the elements within them, by the annotations
+     *  present on them, or null if they must be found by scanning the root
+     *  elements. */
+    private final Map<TypeElement, Set<Element>> annotationIndex;
+
     JavacRoundEnvironment(boolean processingOver,
                           boolean errorRaised,
                           Set<? extends Element> rootElements,
+                          Map<TypeElement, Set<Element>> annotatedElements,
                           ProcessingEnvironment processingEnv) {
         this.processingOver = processingOver;
         this.errorRaised = errorRaised;
         this.rootElements = rootElements;
+        this.annotationIndex = usableIndex(annotatedElements);
         this.processingEnv = processingEnv;
     }
 
+    /** An annotation whose type could not be found is taken to be of any
+     *  annotation type, so elements with such annotations are only found
+     *  by scanning. */
+    private static Map<TypeElement, Set<Element>> usableIndex(Map<TypeElement, Set<Element>> index) {
+        if (index != null) {
+            for (TypeElement t : index.keySet()) {
+                if (t.asType().getKind() == TypeKind.ERROR)
+                    return null;
+            }
+        }
+        return index;
+    }
+
     public String toString() {
         return String.format("[errorRaised=%b, rootElements=%s, processingOver=%b]",
                              errorRaised,
@@ -125,13 +146,50 @@ public class JavacRoundEnvironment implements RoundEnvironment {
         else
             throw new AssertionError("Bad implementation type for " + tm);
 
-        ElementScanner7<Set<Element>, DeclaredType> scanner =
+        AnnotationSetScanner scanner =
             new AnnotationSetScanner(result, typeUtil);
 
-        for (Element element : rootElements)
-            result = scanner.scan(element, annotationTypeElement);
+        if (annotationIndex == null) {
+            for (Element element : rootElements)
+                result = scanner.scan(element, annotationTypeElement);
+            return result;
+        }
+
+        // The index holds the elements of each root in the order the
+        // scanner would find them, but the classes of a root package are
+        // not indexed, so such packages are still scanned.  Take the roots
+        // in order so that the result is the same as scanning them all.
+        Map<Element, java.util.List<Element>> indexed =
+            new HashMap<Element, java.util.List<Element>>();
+        Set<Element> annotated = annotationIndex.get(a);
+        if (annotated != null) {
+            for (Element element : annotated) {
+                Element root = rootOf(element);
+                java.util.List<Element> elements = indexed.get(root);
+                if (elements == null) {
+                    elements = new ArrayList<Element>();
+                    indexed.put(root, elements);
+                }
+                elements.add(element);
+            }
+        }
+        for (Element element : rootElements) {
+            if (element.getKind() == ElementKind.PACKAGE) {
+                scanner.scan(element, annotationTypeElement);
+            } else {
+                java.util.List<Element> elements = indexed.get(element);
+                if (elements != null)
+                    scanner.annotatedElements.addAll(elements);
+            }
+        }
+        return scanner.annotatedElements;
+    }
 
-        return result;
+    /** The root element that the given element is, or is declared in. */
+    private Element rootOf(Element e) {
+        while (e != null && !rootElements.contains(e))
+            e = e.getEnclosingElement();
+        return e;
     }
 
     // Could be written as a local class inside getElementsAnnotatedWith
@@ -109,7 +109,7 @@ public abstract class AbstractDiagnosticFormatter implements DiagnosticFormatter
     }
 
     @Override
-    public String format(JCDiagnostic d, Locale locale) {
+    public synchronized String format(JCDiagnostic d, Locale locale) {
         allCaptured = List.nil();
         return formatDiagnostic(d, locale);
     }
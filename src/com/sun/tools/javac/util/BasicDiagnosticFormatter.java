@@ -105,7 +105,7 @@ public class BasicDiagnosticFormatter extends AbstractDiagnosticFormatter {
             return buf.toString();
     }
 
-    public String formatMessage(JCDiagnostic d, Locale l) {
+    public synchronized String formatMessage(JCDiagnostic d, Locale l) {
         int currentIndentation = 0;
         StringBuilder buf = new StringBuilder();
         Collection<String> args = formatArguments(d, l);
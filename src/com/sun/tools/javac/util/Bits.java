@@ -26,6 +26,11 @@
 package com.sun.tools.javac.util;
 
 /** A class for extensible, mutable bit sets.
+ *
+ *  <p>The bits are kept in longs, so that the set operations work on 64
+ *  bits at a time.  A copy made by dup() shares the words of its original
+ *  until either of them is changed; Flow takes many snapshots of its
+ *  variable states that are never changed afterwards.
  *
  *  <p><b>This is NOT part of any supported API.
  *  If you write code that depends on this, you do so at your own risk.
@@ -35,24 +40,27 @@ package com.sun.tools.javac.util;
 // 位操作的类
 public class Bits {
 
-    // 由于一个int类型只有32位，所以如果要跟踪的变量的数量大于32时就需要更多的int类型的数来表示，这些数都按顺序存储到bits数组中
-    private final static int wordlen = 32;
-    private final static int wordshift = 5;
+    // 由于一个long类型只有64位，所以如果要跟踪的变量的数量大于64时就需要更多的long类型的数来表示，这些数都按顺序存储到bits数组中
+    private final static int wordlen = 64;
+    private final static int wordshift = 6;
     private final static int wordmask = wordlen - 1;
 
     // bits数组用来保存位的相关信息
-    // 一般在构造方法中初始化为大小为1的int数组
-    private int[] bits;
+    // 一般在构造方法中初始化为大小为1的long数组
+    private long[] bits;
+
+    // bits数组是否与dup()得到的另一个Bits对象共享，共享时修改前要先复制一份
+    private boolean shared;
 
     /** Construct an initially empty set.
      */
     public Bits() {
-        this(new int[1]);
+        this(new long[1]);
     }
 
     /** Construct a set consisting initially of given bit vector.
      */
-    public Bits(int[] bits) {
+    public Bits(long[] bits) {
         this.bits = bits;
     }
 
@@ -63,29 +71,35 @@ public class Bits {
         inclRange(start, limit);
     }
 
-    // bits的长度小于len扩容操作
-    // 在创建Bits对象时通常会在构造方法中将bits初始化为大小为1的数组，所以如果存储48，将会扩容为大小为2的数组
+    // 修改bits之前调用：如果bits与其它Bits对象共享则先复制一份，长度小于len时扩容
+    // 在创建Bits对象时通常会在构造方法中将bits初始化为大小为1的数组，所以如果存储80，将会扩容为大小为2的数组
     private void sizeTo(int len) {
-        if (bits.length < len) {
-            int[] newbits = new int[len];
+        if (bits.length < len || shared) {
+            long[] newbits = new long[Math.max(len, bits.length)];
             System.arraycopy(bits, 0, newbits, 0, bits.length);
             bits = newbits;
+            shared = false;
         }
     }
 
     /** This set = {}.
      */
     public void clear() {
-        for (int i = 0; i < bits.length; i++) bits[i] = 0;
+        if (shared) {
+            bits = new long[bits.length];
+            shared = false;
+        } else {
+            for (int i = 0; i < bits.length; i++) bits[i] = 0;
+        }
     }
 
     /** Return a copy of this set.
      */
-    // 复制一份当前的Bits对象并返回
+    // 复制一份当前的Bits对象并返回，两者共享bits数组，直到其中一个被修改
     public Bits dup() {
-        int[] newbits = new int[bits.length];
-        System.arraycopy(bits, 0, newbits, 0, bits.length);
-        return new Bits(newbits);
+        Bits copy = new Bits(bits);
+        copy.shared = shared = true;
+        return copy;
     }
 
     /** Include x in this set.
@@ -93,34 +107,48 @@ public class Bits {
     // 将x放入bits中
     public void incl(int x) {
         Assert.check(x >= 0);
-        // 通过(x>>>wordshift)+1计算存储x需要的数组大小，即需要多少个整数的位
-        // 例如要存储48，也就是将第48上的位设置为1，这时候计算出来的值为2，表示需要用两个整数来存储
+        // 通过(x>>>wordshift)+1计算存储x需要的数组大小，即需要多少个long的位
+        // 例如要存储80，也就是将第80上的位设置为1，这时候计算出来的值为2，表示需要用两个long来存储
         sizeTo((x >>> wordshift) + 1);
-        // x>>>wordshift计算x保存到数组中的哪个整数的位中
-        // bits[x>>>wordshift]|(1<<(x&wordmask))将之前存储的相关信息与当前的信息取或，保证之前保存的相关信息不丢失
+        // x>>>wordshift计算x保存到数组中的哪个long的位中
+        // bits[x>>>wordshift]|(1L<<(x&wordmask))将之前存储的相关信息与当前的信息取或，保证之前保存的相关信息不丢失
         bits[x >>> wordshift] = bits[x >>> wordshift] |
-            (1 << (x & wordmask));
+            (1L << (x & wordmask));
     }
 
 
     /** Include [start..limit) in this set.
      */
-    // 将第start位到第start+limit位的所有位都设置为1，包括第start位，不包括第start+limit位。
+    // 将第start位到第limit位的所有位都设置为1，包括第start位，不包括第limit位。
     public void inclRange(int start, int limit) {
         sizeTo((limit >>> wordshift) + 1);
-        for (int x = start; x < limit; x++)
-            bits[x >>> wordshift] = bits[x >>> wordshift] |
-                (1 << (x & wordmask));
+        if (start >= limit)
+            return;
+        int first = start >>> wordshift;
+        int last = (limit - 1) >>> wordshift;
+        long firstMask = -1L << (start & wordmask);
+        long lastMask = -1L >>> (wordmask - ((limit - 1) & wordmask));
+        if (first == last) {
+            bits[first] |= firstMask & lastMask;
+        } else {
+            bits[first] |= firstMask;
+            for (int i = first + 1; i < last; i++)
+                bits[i] = -1L;
+            bits[last] |= lastMask;
+        }
     }
 
     /** Exclude [start...end] from this set.
      */
     // 将从第start位开始到最后一位的所有位都设置为0，包括最后一位
     public void excludeFrom(int start) {
-        Bits temp = new Bits();
-        temp.sizeTo(bits.length);
-        temp.inclRange(0, start);
-        andSet(temp);
+        int first = start >>> wordshift;
+        if (first >= bits.length)
+            return;
+        sizeTo(bits.length);
+        bits[first] &= ~(-1L << (start & wordmask));
+        for (int i = first + 1; i < bits.length; i++)
+            bits[i] = 0;
     }
 
     /** Exclude x from this set.
@@ -131,17 +159,17 @@ public class Bits {
         Assert.check(x >= 0);
         sizeTo((x >>> wordshift) + 1);
         bits[x >>> wordshift] = bits[x >>> wordshift] &
-            ~(1 << (x & wordmask));
+            ~(1L << (x & wordmask));
     }
 
     /** Is x an element of this set?
      */
     // 判断bits是否包含该元素
-    // 由于bits数组有一定大小，所以如果bits数组大小为2，则2个整数最多有64个可用位，查询参数x不能大于64，判断条件x<(bits.length<<wordshift)就是保证查询参数不能超出当前可用位的数量。通过bits[x>>>wordshif]取出相关的整数后与对应的位执行与操作，如果不为0，则说明相应位为1，x是当前Bits对象的成员
+    // 由于bits数组有一定大小，所以如果bits数组大小为2，则2个long最多有128个可用位，查询参数x不能大于128，判断条件x<(bits.length<<wordshift)就是保证查询参数不能超出当前可用位的数量。通过bits[x>>>wordshif]取出相关的long后与对应的位执行与操作，如果不为0，则说明相应位为1，x是当前Bits对象的成员
     public boolean isMember(int x) {
         return
             0 <= x && x < (bits.length << wordshift) &&
-            (bits[x >>> wordshift] & (1 << (x & wordmask))) != 0;
+            (bits[x >>> wordshift] & (1L << (x & wordmask))) != 0;
     }
 
     /** this set = this set & xs.
@@ -168,11 +196,10 @@ public class Bits {
     // 操作当前的Bits对象，如果与传入的xs对应位上的值相同，将当前Bits对象对应位置为0，否则保持不变，
     // 如当前的Bits对象为001，与110操作后的结果为001
     public Bits diffSet(Bits xs) {
-        for (int i = 0; i < bits.length; i++) {
-            if (i < xs.bits.length) {
-                bits[i] = bits[i] & ~xs.bits[i];
-            }
-        }
+        sizeTo(bits.length);
+        int n = Math.min(bits.length, xs.bits.length);
+        for (int i = 0; i < n; i++)
+            bits[i] = bits[i] & ~xs.bits[i];
         return this;
     }
 
@@ -185,20 +212,6 @@ public class Bits {
         return this;
     }
 
-    /** Count trailing zero bits in an int. Algorithm from "Hacker's
-     *  Delight" by Henry S. Warren Jr. (figure 5-13)
-     */
-    private static int trailingZeroBits(int x) {
-        Assert.check(wordlen == 32);
-        if (x == 0) return 32;
-        int n = 1;
-        if ((x & 0xffff) == 0) { n += 16; x >>>= 16; }
-        if ((x & 0x00ff) == 0) { n +=  8; x >>>=  8; }
-        if ((x & 0x000f) == 0) { n +=  4; x >>>=  4; }
-        if ((x & 0x0003) == 0) { n +=  2; x >>>=  2; }
-        return n - (x&1);
-    }
-
     /** Return the index of the least bit position >= x that is set.
      *  If none are set, returns -1.  This provides a nice way to iterate
      *  over the members of a bit set:
@@ -213,16 +226,37 @@ public class Bits {
     public int nextBit(int x) {
         int windex = x >>> wordshift;
         if (windex >= bits.length) return -1;
-        int word = bits[windex] & ~((1 << (x & wordmask))-1);
+        long word = bits[windex] & (-1L << (x & wordmask));
         while (true) {
             if (word != 0)
-                return (windex << wordshift) + trailingZeroBits(word);
+                return (windex << wordshift) + Long.numberOfTrailingZeros(word);
             windex++;
             if (windex >= bits.length) return -1;
             word = bits[windex];
         }
     }
 
+    /** Return the index of the least bit position >= x that is set in
+     *  this set but not in xs, or -1 if there is none.  Same as
+     *  dup().diffSet(xs).nextBit(x), without the copy.
+     */
+    // 查找从第x位开始在当前Bits对象中为1而在xs中为0的位，Flow在判断循环是否需要再分析一遍时使用
+    public int nextBitNotIn(Bits xs, int x) {
+        int windex = x >>> wordshift;
+        if (windex >= bits.length) return -1;
+        long mask = -1L << (x & wordmask);
+        while (true) {
+            long word = bits[windex] & mask;
+            if (windex < xs.bits.length)
+                word &= ~xs.bits[windex];
+            if (word != 0)
+                return (windex << wordshift) + Long.numberOfTrailingZeros(word);
+            windex++;
+            if (windex >= bits.length) return -1;
+            mask = -1L;
+        }
+    }
+
     /** a string representation of this set.
      */
     public String toString() {
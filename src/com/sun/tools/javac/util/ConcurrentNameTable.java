@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implementation of Name.Table that can be used by several threads at
+ * once without locking. Like SharedNameTable, it stores the bytes of
+ * many names in a shared byte array, but names are stored in a list of
+ * fixed size chunks, so that growing the table never copies the names
+ * stored so far. A name is never split across chunks, so that
+ * getByteArray and getByteOffset still describe its bytes.
+ *
+ * <p>Names are entered into a hash chain with compare-and-set. If two
+ * threads enter the same name at the same time, one of them finds the
+ * name of the other thread in the chain and uses it; the bytes it had
+ * stored for the name are then unused.
+ *
+ * <p>This table is used if the "useConcurrentNameTable" option is set.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ConcurrentNameTable extends Name.Table {
+    /**
+     * The size of a chunk. Longer names get a chunk of their own.
+     */
+    static final int CHUNK_SIZE = 0x10000;
+
+    /**
+     * The hash table for names.
+     */
+    private final AtomicReferenceArray<NameImpl> hashes;
+
+    /**
+     * The mask to be used for hashing
+     */
+    private final int hashMask;
+
+    /**
+     * The chunk that new names are stored in.
+     */
+    private final AtomicReference<Chunk> current;
+
+    /**
+     * Buffers for converting chars to utf8 in fromChars.
+     */
+    private final ThreadLocal<byte[]> utfBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[0x100];
+        }
+    };
+
+    /*
+     * Statistics
+     */
+    private final AtomicInteger nameCount = new AtomicInteger();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicInteger chunkCount = new AtomicInteger(1);
+
+    /**
+     * Allocator
+     *
+     * @param names    The main name table
+     * @param hashSize the (constant) size to be used for the hash table
+     *                 needs to be a power of two.
+     */
+    public ConcurrentNameTable(Names names, int hashSize) {
+        super(names);
+        hashMask = hashSize - 1;
+        hashes = new AtomicReferenceArray<NameImpl>(hashSize);
+        current = new AtomicReference<Chunk>(new Chunk(0, CHUNK_SIZE));
+    }
+
+    public ConcurrentNameTable(Names names) {
+        this(names, 0x8000);
+    }
+
+    @Override
+    public Name fromChars(char[] cs, int start, int len) {
+        byte[] buf = utfBuffer.get();
+        if (len * 3 > buf.length) {
+            buf = new byte[Integer.highestOneBit(len * 3) << 1];
+            utfBuffer.set(buf);
+        }
+        int nbytes = Convert.chars2utf(cs, start, buf, 0, len);
+        return fromUtf(buf, 0, nbytes);
+    }
+
+    @Override
+    public Name fromUtf(byte[] cs, int start, int len) {
+        int h = hashValue(cs, start, len) & hashMask;
+        NameImpl head = hashes.get(h);
+        NameImpl n = find(head, null, cs, start, len);
+        if (n != null) {
+            return n;
+        }
+
+        n = allocate(len);
+        System.arraycopy(cs, start, n.bytes, n.offset, len);
+        while (true) {
+            n.next = head;
+            if (hashes.compareAndSet(h, head, n)) {
+                nameCount.incrementAndGet();
+                byteCount.addAndGet(len);
+                return n;
+            }
+            // Another thread entered a name into this chain. Only the
+            // names entered since we last looked need to be checked.
+            NameImpl newHead = hashes.get(h);
+            NameImpl other = find(newHead, head, cs, start, len);
+            if (other != null) {
+                return other;
+            }
+            head = newHead;
+        }
+    }
+
+    /**
+     * Find a name with the given bytes in a hash chain, from name `from'
+     * up to but excluding name `to'.
+     */
+    private static NameImpl find(NameImpl from, NameImpl to, byte[] cs, int start, int len) {
+        for (NameImpl n = from; n != to; n = n.next) {
+            if (n.length == len && equals(n.bytes, n.offset, cs, start, len)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Allocate room for a name of `len' bytes in the current chunk,
+     * starting a new chunk if it is full.
+     */
+    private NameImpl allocate(int len) {
+        // An empty name still takes a byte, so that its index is unique.
+        int size = Math.max(len, 1);
+        while (true) {
+            Chunk c = current.get();
+            int offset = c.used.get();
+            if (offset + size <= c.bytes.length) {
+                if (c.used.compareAndSet(offset, offset + size)) {
+                    return new NameImpl(this, c.bytes, offset, c.base + offset, len);
+                }
+            } else {
+                Chunk next = new Chunk(c.base + c.bytes.length, Math.max(CHUNK_SIZE, size));
+                if (current.compareAndSet(c, next)) {
+                    chunkCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // Nothing to release; the table is simply dropped.
+    }
+
+    /**
+     * Return a short summary of the size of this table.
+     */
+    public String getStatistics() {
+        int longestChain = 0;
+        int usedBuckets = 0;
+        for (int i = 0; i < hashes.length(); i++) {
+            int chain = 0;
+            for (NameImpl n = hashes.get(i); n != null; n = n.next) {
+                chain++;
+            }
+            if (chain > 0) {
+                usedBuckets++;
+            }
+            longestChain = Math.max(longestChain, chain);
+        }
+        Chunk c = current.get();
+        long allocated = c.base + c.used.get();
+        return String.format("name table: %d names, %d bytes (%d allocated in %d chunks), "
+                + "load factor %.2f, %d of %d buckets used, longest chain %d",
+                nameCount.get(), byteCount.get(), allocated, chunkCount.get(),
+                (double) nameCount.get() / hashes.length(), usedBuckets, hashes.length(),
+                longestChain);
+    }
+
+    /**
+     * A chunk of the byte array holding the names. `base' is the number of
+     * bytes in all chunks before this one, so that base plus the offset of
+     * a name in its chunk is unique.
+     */
+    private static class Chunk {
+        final int base;
+        final byte[] bytes;
+        final AtomicInteger used = new AtomicInteger();
+
+        Chunk(int base, int size) {
+            this.base = base;
+            this.bytes = new byte[size];
+        }
+    }
+
+    static class NameImpl extends Name {
+        /**
+         * The next name occupying the same hash bucket.
+         */
+        NameImpl next;
+
+        /**
+         * The chunk holding the bytes of this name.
+         */
+        final byte[] bytes;
+
+        /**
+         * The index of the bytes of this name in its chunk.
+         */
+        final int offset;
+
+        /**
+         * The index of this name in the whole table.
+         */
+        final int index;
+
+        /**
+         * The number of bytes in this name.
+         */
+        final int length;
+
+        NameImpl(ConcurrentNameTable table, byte[] bytes, int offset, int index, int length) {
+            super(table);
+            this.bytes = bytes;
+            this.offset = offset;
+            this.index = index;
+            this.length = length;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public int getByteLength() {
+            return length;
+        }
+
+        @Override
+        public byte getByteAt(int i) {
+            return bytes[offset + i];
+        }
+
+        @Override
+        public byte[] getByteArray() {
+            return bytes;
+        }
+
+        @Override
+        public int getByteOffset() {
+            return offset;
+        }
+
+        /**
+         * Return the hash value of this name.
+         */
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        /**
+         * Is this name equal to other?
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof Name) {
+                return
+                        table == ((Name) other).table && index == ((Name) other).getIndex();
+            } else {
+                return false;
+            }
+        }
+    }
+}
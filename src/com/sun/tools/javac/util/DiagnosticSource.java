@@ -73,7 +73,7 @@ public class DiagnosticSource {
      * for the current source file.  Zero is returned if no line exists
      * for the given position.
      */
-    public int getLineNumber(int pos) {
+    public synchronized int getLineNumber(int pos) {
         try {
             if (findLine(pos)) {
                 return line;
@@ -88,7 +88,7 @@ public class DiagnosticSource {
      * for the current source file.  Zero is returned if no column exists
      * for the given position.
      */
-    public int getColumnNumber(int pos, boolean expandTabs) {
+    public synchronized int getColumnNumber(int pos, boolean expandTabs) {
         try {
             if (findLine(pos)) {
                 int column = 0;
@@ -112,17 +112,20 @@ public class DiagnosticSource {
 
     /** Return the content of the line containing a given pos.
      */
-    public String getLine(int pos) {
+    public synchronized String getLine(int pos) {
         try {
             if (!findLine(pos))
                 return null;
+            if (lineStart == lastLineStart)
+                return lastLine;
 
             int lineEnd = lineStart;
             while (lineEnd < bufLen && buf[lineEnd] != CR && buf[lineEnd] != LF)
                 lineEnd++;
-            if (lineEnd - lineStart == 0)
-                return null;
-            return new String(buf, lineStart, lineEnd - lineStart);
+            lastLineStart = lineStart;
+            lastLine = (lineEnd - lineStart == 0) ? null
+                    : new String(buf, lineStart, lineEnd - lineStart);
+            return lastLine;
         } finally {
             buf = null;
         }
@@ -138,6 +141,22 @@ public class DiagnosticSource {
         endPosTable = t;
     }
 
+    /** Supply the content of the file, so that looking up a position does
+     *  not read the file through its file manager again. This lets a
+     *  thread other than the compiler's create diagnostics for the file.
+     *  Passing null goes back to reading the file when needed.
+     */
+    public void setContent(CharSequence content) {
+        this.content = content;
+    }
+
+    /** Supply the line map built by the parser for this file, so that
+     *  looking up a position does not scan the content for line breaks.
+     */
+    public void setLineMap(Position.LineMap lineMap) {
+        this.lineMap = lineMap;
+    }
+
     /** Find the line in the buffer that contains the current position
      * @param pos      Character offset into the buffer
      */
@@ -150,13 +169,21 @@ public class DiagnosticSource {
             if (buf == null && refBuf != null)
                 buf = refBuf.get();
 
-            if (buf == null) {
+            if (buf == null)
                 buf = initBuf(fileObject);
+            if (lineMap == null)
+                lineMap = Position.makeLineMap(buf, bufLen, false);
+
+            // The line map finds the line by binary search; the scan below
+            // then only crosses the rest of that line.  It still decides
+            // the cases the map does not: a position on the LF of a CR LF
+            // pair, or past a line break at the end of the content.
+            line = lineMap.getLineNumber(pos);
+            if (line < Position.FIRSTLINE) {
+                line = Position.FIRSTLINE;
                 lineStart = 0;
-                line = 1;
-            } else if (lineStart > pos) { // messages don't come in order
-                lineStart = 0;
-                line = 1;
+            } else {
+                lineStart = lineMap.getStartPosition(line);
             }
 
             int bp = lineStart;
@@ -183,7 +210,7 @@ public class DiagnosticSource {
 
     protected char[] initBuf(JavaFileObject fileObject) throws IOException {
         char[] buf;
-        CharSequence cs = fileObject.getCharContent(true);
+        CharSequence cs = (content != null) ? content : fileObject.getCharContent(true);
         if (cs instanceof CharBuffer) {
             CharBuffer cb = (CharBuffer) cs;
             buf = JavacFileManager.toArray(cb);
@@ -199,8 +226,14 @@ public class DiagnosticSource {
     /** The underlying file object. */
     protected JavaFileObject fileObject;
 
+    /** The content of the file, if supplied by setContent. */
+    private CharSequence content;
+
     protected Map<JCTree, Integer> endPosTable;
 
+    /** The start of each line, from the parser or built on first use. */
+    protected Position.LineMap lineMap;
+
     /** A soft reference to the content of the file object. */
     protected SoftReference<char[]> refBuf;
 
@@ -216,6 +249,11 @@ public class DiagnosticSource {
     /** The line number of a line found by findLine. */
     protected int line;
 
+    /** The start and content of the line last returned by getLine, which
+     *  diagnostics on the same line share rather than copy again. */
+    private int lastLineStart = -1;
+    private String lastLine;
+
     /** A log for reporting errors, such as errors accessing the content. */
     protected AbstractLog log;
 }
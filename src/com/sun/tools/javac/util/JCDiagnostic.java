@@ -345,8 +345,9 @@ public class JCDiagnostic implements Diagnostic<JavaFileObject> {
     private final DiagnosticType type;
     private final DiagnosticSource source;
     private final DiagnosticPosition position;
-    private final int line;
-    private final int column;
+    private int line;
+    private int column;
+    private boolean located;
     private final String key;
     protected final Object[] args;
     private final Set<DiagnosticFlag> flags;
@@ -381,14 +382,24 @@ public class JCDiagnostic implements Diagnostic<JavaFileObject> {
         this.position = pos;
         this.key = key;
             this.args = args;
+    }
 
-        int n = (pos == null ? Position.NOPOS : pos.getPreferredPosition());
+    /**
+     * Find the line and column of the position, on first use only.  Log
+     * calls this when it hands the diagnostic on, while the source is still
+     * at hand; diagnostics dropped past -Xmaxwarns never need it.
+     */
+    void locate() {
+        if (located)
+            return;
+        int n = (position == null ? Position.NOPOS : position.getPreferredPosition());
         if (n == Position.NOPOS || source == null)
             line = column = -1;
         else {
             line = source.getLineNumber(n);
             column = source.getColumnNumber(n, true);
         }
+        located = true;
     }
 
     /**
@@ -481,6 +492,7 @@ public class JCDiagnostic implements Diagnostic<JavaFileObject> {
      * @return  the line number within the source referred to by this diagnostic
      */
     public long getLineNumber() {
+        locate();
         return line;
     }
 
@@ -489,6 +501,7 @@ public class JCDiagnostic implements Diagnostic<JavaFileObject> {
      * @return  the column number within the line of source referred to by this diagnostic
      */
     public long getColumnNumber() {
+        locate();
         return column;
     }
 
@@ -32,6 +32,9 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
 
@@ -100,6 +103,12 @@ public class Log extends AbstractLog {
      */
     protected DiagnosticListener<? super JavaFileObject> diagListener;
 
+    /**
+     * Queue through which diagnostics reach the listener on a thread of
+     * their own, if -XDdiagnosticQueue was given.
+     */
+    private DiagnosticQueue diagnosticQueue;
+
     /**
      * Formatter for diagnostics.
      */
@@ -121,6 +130,13 @@ public class Log extends AbstractLog {
     public boolean deferDiagnostics;
     public Queue<JCDiagnostic> deferredDiagnostics = new ListBuffer<JCDiagnostic>();
 
+    /**
+     * Diagnostics held back for threads that report them while running
+     * alongside each other, to be reported later in a fixed order.
+     */
+    private final ThreadLocal<ListBuffer<JCDiagnostic>> heldDiagnostics =
+        new ThreadLocal<ListBuffer<JCDiagnostic>>();
+
     /** Construct a log with given I/O redirections.
      */
     @Deprecated
@@ -147,6 +163,11 @@ public class Log extends AbstractLog {
         DiagnosticListener<? super JavaFileObject> dl =
             context.get(DiagnosticListener.class);
         this.diagListener = dl;
+        if (dl != null && options.isSet("diagnosticQueue")) {
+            int capacity = WorkerThreads.intOption(options, "diagnosticQueue",
+                                                   DiagnosticQueue.DEFAULT_CAPACITY);
+            this.diagnosticQueue = new DiagnosticQueue(dl, capacity);
+        }
 
         String ek = options.get("expectKeys");
         if (ek != null)
@@ -199,6 +220,41 @@ public class Log extends AbstractLog {
         this(context, defaultWriter, defaultWriter, defaultWriter);
     }
 
+    /** Construct a log with the settings of another log, which defers
+     *  every diagnostic reported to it.
+     */
+    private Log(Log parent) {
+        super(parent.diags);
+        this.errWriter = parent.errWriter;
+        this.warnWriter = parent.warnWriter;
+        this.noticeWriter = parent.noticeWriter;
+        this.dumpOnError = parent.dumpOnError;
+        this.promptOnError = parent.promptOnError;
+        this.emitWarnings = parent.emitWarnings;
+        this.suppressNotes = parent.suppressNotes;
+        this.MaxErrors = parent.MaxErrors;
+        this.MaxWarnings = parent.MaxWarnings;
+        this.messages = parent.messages;
+        this.diagFormatter = parent.diagFormatter;
+        this.diagListener = parent.diagListener;
+        this.diagnosticQueue = parent.diagnosticQueue;
+        this.deferDiagnostics = true;
+    }
+
+    /** Create a log for reporting diagnostics about the given file from
+     *  another thread. The new log defers all its diagnostics; the owner
+     *  of this log is expected to pass them to {@link #report} once the
+     *  other thread is done. The diagnostic source of the file is shared
+     *  with this log, so this method must be called by the thread that
+     *  uses this log.
+     */
+    public Log deferredCopy(JavaFileObject file) {
+        Log copy = new Log(this);
+        copy.source = getSource(file);
+        copy.sourceMap.put(file, copy.source);
+        return copy;
+    }
+
     /** Get the Log instance for this context. */
     public static Log instance(Context context) {
         Log instance = context.get(logKey);
@@ -230,6 +286,11 @@ public class Log extends AbstractLog {
         getSource(name).setEndPosTable(table);
     }
 
+    public void setLineMap(JavaFileObject name, Position.LineMap lineMap) {
+        name.getClass(); // null check
+        getSource(name).setLineMap(lineMap);
+    }
+
     /** Return current sourcefile.
      */
     public JavaFileObject currentSourceFile() {
@@ -251,6 +312,8 @@ public class Log extends AbstractLog {
     /** Flush the logs
      */
     public void flush() {
+        if (diagnosticQueue != null)
+            diagnosticQueue.flush();
         errWriter.flush();
         warnWriter.flush();
         noticeWriter.flush();
@@ -359,6 +422,21 @@ public class Log extends AbstractLog {
         nwarnings++;
     }
 
+    /** Hold back the diagnostics reported by the current thread, until
+     *  they are taken with takeHeldDiagnostics. The caller must see that
+     *  no other thread uses this log at the same time. */
+    public void holdDiagnostics() {
+        heldDiagnostics.set(new ListBuffer<JCDiagnostic>());
+    }
+
+    /** Stop holding back the diagnostics reported by the current thread,
+     *  and return those held so far, which have not been reported. */
+    public List<JCDiagnostic> takeHeldDiagnostics() {
+        ListBuffer<JCDiagnostic> held = heldDiagnostics.get();
+        heldDiagnostics.remove();
+        return (held == null) ? List.<JCDiagnostic>nil() : held.toList();
+    }
+
     /** Report all deferred diagnostics, and clear the deferDiagnostics flag. */
     public void reportDeferredDiagnostics() {
         reportDeferredDiagnostics(EnumSet.allOf(JCDiagnostic.Kind.class));
@@ -380,6 +458,12 @@ public class Log extends AbstractLog {
      * reported so far, the diagnostic may be handed off to writeDiagnostic.
      */
     public void report(JCDiagnostic diagnostic) {
+        ListBuffer<JCDiagnostic> held = heldDiagnostics.get();
+        if (held != null) {
+            held.append(diagnostic);
+            return;
+        }
+
         if (deferDiagnostics) {
             deferredDiagnostics.add(diagnostic);
             return;
@@ -425,7 +509,11 @@ public class Log extends AbstractLog {
      */
     protected void writeDiagnostic(JCDiagnostic diag) {
         if (diagListener != null) {
-            diagListener.report(diag);
+            diag.locate();
+            if (diagnosticQueue != null)
+                diagnosticQueue.put(diag);
+            else
+                diagListener.report(diag);
             return;
         }
 
@@ -447,6 +535,139 @@ public class Log extends AbstractLog {
         writer.flush();
     }
 
+    /**
+     * Hands diagnostics to a listener on a thread of its own, so that a slow
+     * listener does not hold up the compiler.  The queue is bounded: when
+     * the listener falls that far behind, the compiler waits for it.  The
+     * thread is started when a diagnostic arrives and stops once the queue
+     * has been idle for a while.
+     *
+     * <p>The listener sees each diagnostic in the order it was reported.  A
+     * failure thrown by the listener is rethrown in the compiler at the next
+     * report or flush, and the diagnostics after it are dropped, as the
+     * compilation would have ended there.
+     */
+    private static class DiagnosticQueue implements Runnable {
+        static final int DEFAULT_CAPACITY = 1024;
+
+        /** How long the thread waits for more diagnostics before it stops. */
+        private static final long LINGER_MILLIS = 100;
+
+        private final DiagnosticListener<? super JavaFileObject> listener;
+        private final BlockingQueue<JCDiagnostic> queue;
+
+        /** The delivering thread, or null when none is running. */
+        private Thread thread;
+
+        /** Diagnostics put but not yet delivered. */
+        private int pending;
+
+        /** A failure thrown by the listener, not yet rethrown. */
+        private Throwable failure;
+
+        /** Set once the listener has failed. */
+        private boolean failed;
+
+        DiagnosticQueue(DiagnosticListener<? super JavaFileObject> listener, int capacity) {
+            this.listener = listener;
+            this.queue = new ArrayBlockingQueue<JCDiagnostic>(capacity);
+        }
+
+        void put(JCDiagnostic diag) {
+            synchronized (this) {
+                rethrow();
+                if (failed)
+                    return;
+                pending++;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(diag);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            synchronized (this) {
+                if (thread == null) {
+                    thread = new Thread(this, "javac diagnostics");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        /** Wait until the listener has seen every diagnostic put so far. */
+        synchronized void flush() {
+            boolean interrupted = false;
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            rethrow();
+        }
+
+        private void rethrow() {
+            Throwable t = failure;
+            if (t == null)
+                return;
+            failure = null;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException(t);
+        }
+
+        public void run() {
+            while (true) {
+                JCDiagnostic diag;
+                try {
+                    diag = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    diag = null;
+                }
+                if (diag == null) {
+                    synchronized (this) {
+                        if (queue.isEmpty()) {
+                            thread = null;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                Throwable t = null;
+                boolean skip;
+                synchronized (this) {
+                    skip = failed;
+                }
+                if (!skip) {
+                    try {
+                        listener.report(diag);
+                    } catch (Throwable e) {
+                        t = e;
+                    }
+                }
+                synchronized (this) {
+                    if (t != null) {
+                        failure = t;
+                        failed = true;
+                    }
+                    pending--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
     @Deprecated
     protected PrintWriter getWriterForDiagnosticType(DiagnosticType dt) {
         switch (dt) {
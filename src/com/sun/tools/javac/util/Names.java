@@ -273,6 +273,9 @@ public class Names {
         boolean useUnsharedTable = options.isSet("useUnsharedTable");
         if (useUnsharedTable)
             return new UnsharedNameTable(this);
+        else if (options.isSet("useConcurrentNameTable")
+                 || options.isSet("parallelParse"))
+            return new ConcurrentNameTable(this);
         else
             return new SharedNameTable(this);
     }
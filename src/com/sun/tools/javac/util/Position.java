@@ -186,16 +186,23 @@ public class Position {
             return getPosition(longToInt(line), longToInt(column));
         }
 
-        // Cache of last line number lookup
-        private int lastPosition = Position.FIRSTPOS;
-        private int lastLine = Position.FIRSTLINE;
+        // Cache of last line number lookup, position in the high half and
+        // line in the low half.  The map is shared between the compiler and
+        // the diagnostics queue; volatile makes the long read and written
+        // whole, so a position is never paired with a stale line.
+        private volatile long lastLookup = ((long) Position.FIRSTPOS << 32) | Position.FIRSTLINE;
 
         public int getLineNumber(int pos) {
-            if (pos == lastPosition) {
-                return lastLine;
+            long last = lastLookup;
+            if ((int) (last >>> 32) == pos) {
+                return (int) last;
             }
-            lastPosition = pos;
+            int line = findLineNumber(pos);
+            lastLookup = ((long) pos << 32) | (line & 0xFFFFFFFFL);
+            return line;
+        }
 
+        private int findLineNumber(int pos) {
             int low = 0;
             int high = startPosition.length-1;
             while (low <= high) {
@@ -206,13 +213,10 @@ public class Position {
                     low = mid + 1;
                 else if (midVal > pos)
                     high = mid - 1;
-                else {
-                    lastLine = mid + 1; // pos is at beginning of this line
-                    return lastLine;
-                }
+                else
+                    return mid + 1; // pos is at beginning of this line
             }
-            lastLine = low;
-            return lastLine;  // pos is on this line
+            return low;  // pos is on this line
         }
 
         public long getLineNumber(long pos) {
@@ -92,7 +92,7 @@ public final class RawDiagnosticFormatter extends AbstractDiagnosticFormatter {
         }
     }
 
-    public String formatMessage(JCDiagnostic d, Locale l) {
+    public synchronized String formatMessage(JCDiagnostic d, Locale l) {
         StringBuilder buf = new StringBuilder();
         Collection<String> args = formatArguments(d, l);
         buf.append(localize(null, d.getCode(), args.toArray()));
@@ -103,7 +103,7 @@ public class RichDiagnosticFormatter extends
     }
 
     @Override
-    public String format(JCDiagnostic diag, Locale l) {
+    public synchronized String format(JCDiagnostic diag, Locale l) {
         StringBuilder sb = new StringBuilder();
         nameSimplifier = new ClassNameSimplifier();
         for (WhereClauseKind kind : WhereClauseKind.values())
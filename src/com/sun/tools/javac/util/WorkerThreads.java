@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2011, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.javac.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/** The thread pools used by the parts of the compiler that can work on
+ *  more than one thread, such as -XDparallelParse, -XDparallelWriters,
+ *  -XDparallelPaths and -XDparallelProcessors, and how many threads
+ *  they use.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    /** The number of threads used when an option does not give one.
+     */
+    public static int defaultCount() {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** The number of threads given by an option such as
+     *  -XDparallelParse=n, or the default count if the option has no
+     *  value or its value is not a positive number.
+     */
+    public static int count(Options options, String option) {
+        return intOption(options, option, defaultCount());
+    }
+
+    /** The value of an option such as -XDdiagnosticQueue=n, or the given
+     *  default if the option has no value or its value is not a positive
+     *  number.
+     */
+    public static int intOption(Options options, String option, int defaultValue) {
+        String s = options.get(option);
+        if (s != null) {
+            try {
+                int n = Integer.parseInt(s);
+                if (n > 0)
+                    return n;
+            } catch (NumberFormatException e) {
+                // use the default
+            }
+        }
+        return defaultValue;
+    }
+
+    /** A pool of `nthreads' daemon threads, named javac-<name>-1 and so
+     *  on. The threads are daemons so that a pool that is not shut down,
+     *  because the compiler was abandoned, does not keep the VM alive.
+     */
+    public static ExecutorService newPool(int nthreads, final String name) {
+        return Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+            int count = 0;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "javac-" + name + "-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}